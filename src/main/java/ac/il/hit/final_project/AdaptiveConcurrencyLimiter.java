@@ -0,0 +1,135 @@
+package ac.il.hit.final_project;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * AIMD concurrency limiter driven by observed latency.
+ * The limit grows by one while requests complete close to the baseline latency
+ * and shrinks multiplicatively once latency goes above baseline * tolerance
+ * (or a request fails), so the queue in front of the db never gets a chance to build up.
+ * The baseline is the minimum latency seen over a window of samples, so it follows
+ * slow drifts of the "no load" latency instead of sticking to a single lucky sample.
+ * The limit is decreased at most once per round trip: the requests that were already running when it was
+ * decreased were slowed down by the old limit, they report the same overload again and are not counted.
+ */
+public class AdaptiveConcurrencyLimiter {
+
+    //number of samples after which the baseline latency is re-measured
+    private static final int BASELINE_WINDOW = 500;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double backoffRatio;
+    private final double tolerance;
+    private final LongSupplier nanoClock;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder rejected = new LongAdder();
+    private volatile int limit;
+
+    //guarded by this
+    private long baselineNanos = Long.MAX_VALUE;
+    private long windowMinNanos = Long.MAX_VALUE;
+    private int windowSamples;
+    private long lastDecreaseNanos;
+    private boolean decreased;
+
+    /**
+     * @param initialLimit limit to start with
+     * @param minLimit the limit never goes below this value
+     * @param maxLimit the limit never goes above this value
+     * @param backoffRatio factor (0..1) the limit is multiplied by when latency degrades
+     * @param tolerance how many times the baseline latency a request may take before it counts as slow
+     */
+    public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, double backoffRatio, double tolerance) {
+        this(initialLimit, minLimit, maxLimit, backoffRatio, tolerance, System::nanoTime);
+    }
+
+    //the tests pass their own clock
+    AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, double backoffRatio, double tolerance,
+                               LongSupplier nanoClock) {
+        if (minLimit < 1 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("Illegal limit range");
+        }
+        if (backoffRatio <= 0 || backoffRatio >= 1) {
+            throw new IllegalArgumentException("Illegal backoff ratio");
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.backoffRatio = backoffRatio;
+        this.tolerance = tolerance;
+        this.nanoClock = nanoClock;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+    }
+
+    /**
+     * Tries to reserve a slot for a new request
+     * @return true if the request may proceed, release() must then be called exactly once
+     */
+    public boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= limit) {
+                rejected.increment();
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Frees the slot taken by tryAcquire() and feeds the request latency into the limit
+     * @param latencyNanos how long the request took
+     * @param dropped true if the request failed (exception or 5xx), always treated as overload
+     */
+    public void release(long latencyNanos, boolean dropped) {
+        int inFlightBefore = inFlight.getAndDecrement();
+        onSample(nanoClock.getAsLong(), latencyNanos, dropped, inFlightBefore);
+    }
+
+    /**
+     * Frees the slot taken by tryAcquire() without a sample, for requests whose latency says nothing
+     * about the load (see RouteClass.EXPORT)
+     */
+    public void release() {
+        inFlight.decrementAndGet();
+    }
+
+    private synchronized void onSample(long nowNanos, long latencyNanos, boolean dropped, int inFlightBefore) {
+        windowMinNanos = Math.min(windowMinNanos, latencyNanos);
+        if (++windowSamples >= BASELINE_WINDOW || baselineNanos == Long.MAX_VALUE) {
+            baselineNanos = windowMinNanos;
+            windowMinNanos = Long.MAX_VALUE;
+            windowSamples = 0;
+        }
+
+        int current = limit;
+        if (dropped || latencyNanos > baselineNanos * tolerance) {
+            //only requests started after the last decrease can tell whether it was enough
+            if (!decreased || nowNanos - latencyNanos >= lastDecreaseNanos) {
+                limit = Math.max(minLimit, (int) (current * backoffRatio));
+                lastDecreaseNanos = nowNanos;
+                decreased = true;
+            }
+        } else if (inFlightBefore * 2 >= current) {
+            //only grow while the current limit is actually being used
+            limit = Math.min(maxLimit, current + 1);
+        }
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public long getRejected() {
+        return rejected.sum();
+    }
+}
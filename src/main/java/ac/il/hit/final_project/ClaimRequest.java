@@ -0,0 +1,35 @@
+package ac.il.hit.final_project;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/*
+ * body of POST /jobs/claim
+ * workerId      - who claims the jobs, needed later to renew / release the lease
+ * status        - claim jobs that currently have this status
+ * jobType       - optional, only claim jobs of this type
+ * limit         - claim up to this many jobs (1..100)
+ * leaseSeconds  - how long the lease lasts before the reaper gives the job back (1..3600)
+ * claimedStatus - optional, status the claimed jobs move to (e.g. 102 processing)
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+public class ClaimRequest {
+    private String workerId;
+    private Integer status;
+    private String jobType;
+    private int limit = 1;
+    private int leaseSeconds = 60;
+    private Integer claimedStatus;
+
+    public ClaimRequest(String workerId, Integer status, String jobType, int limit, int leaseSeconds, Integer claimedStatus) {
+        this.workerId = workerId;
+        this.status = status;
+        this.jobType = jobType;
+        this.limit = limit;
+        this.leaseSeconds = leaseSeconds;
+        this.claimedStatus = claimedStatus;
+    }
+}
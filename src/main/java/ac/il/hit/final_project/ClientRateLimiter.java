@@ -0,0 +1,103 @@
+package ac.il.hit.final_project;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Lock-free per-client token bucket.
+ * Implemented as GCRA (generic cell rate algorithm): instead of a token count and a refill time
+ * every client only keeps its "theoretical arrival time" in one AtomicLong, so taking a token is a
+ * single compare-and-set and no lock is ever held. The buckets live in a ConcurrentHashMap, which is
+ * striped internally, so different clients never contend with each other.
+ * A bucket whose arrival time is far enough in the past is full again and can be evicted.
+ * The number of buckets is capped: once maxClients are tracked, a client without a bucket is rejected
+ * until idle ones are evicted, so a flood of new client keys can't grow the map without bound.
+ */
+public class ClientRateLimiter {
+
+    static final int DEFAULT_MAX_CLIENTS = 100_000;
+
+    private final ConcurrentHashMap<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+    private final long emissionIntervalNanos;
+    private final long burstWindowNanos;
+    private final int maxClients;
+    private final LongSupplier clock;
+
+    /**
+     * @param permitsPerSecond sustained rate allowed for every client
+     * @param burst how many requests a client may send at once after being idle
+     */
+    public ClientRateLimiter(double permitsPerSecond, int burst) {
+        this(permitsPerSecond, burst, DEFAULT_MAX_CLIENTS);
+    }
+
+    /**
+     * @param permitsPerSecond sustained rate allowed for every client
+     * @param burst how many requests a client may send at once after being idle
+     * @param maxClients max number of clients tracked at once
+     */
+    public ClientRateLimiter(double permitsPerSecond, int burst, int maxClients) {
+        this(permitsPerSecond, burst, maxClients, System::nanoTime);
+    }
+
+    //the clock is exposed for tests
+    ClientRateLimiter(double permitsPerSecond, int burst, LongSupplier clock) {
+        this(permitsPerSecond, burst, DEFAULT_MAX_CLIENTS, clock);
+    }
+
+    ClientRateLimiter(double permitsPerSecond, int burst, int maxClients, LongSupplier clock) {
+        if (permitsPerSecond <= 0 || burst < 1 || maxClients < 1) {
+            throw new IllegalArgumentException("Illegal rate limit");
+        }
+        this.emissionIntervalNanos = Math.max(1L, (long) (1_000_000_000L / permitsPerSecond));
+        this.burstWindowNanos = emissionIntervalNanos * burst;
+        this.maxClients = maxClients;
+        this.clock = clock;
+    }
+
+    /**
+     * Takes one token from the bucket of a client
+     * @param clientKey api key or remote address of the caller
+     * @return 0 if the request is allowed, otherwise how many nanoseconds the client should wait
+     */
+    public long tryAcquire(String clientKey) {
+        long now = clock.getAsLong();
+        AtomicLong arrival = buckets.get(clientKey);
+        if (arrival == null) {
+            if (buckets.size() >= maxClients) {
+                //full (the check races with other new clients, the cap may be passed by a few)
+                return emissionIntervalNanos;
+            }
+            arrival = buckets.computeIfAbsent(clientKey, key -> new AtomicLong(now));
+        }
+        while (true) {
+            long current = arrival.get();
+            long next = (current - now > 0 ? current : now) + emissionIntervalNanos;
+            long ahead = next - now;
+            if (ahead > burstWindowNanos) {
+                return ahead - burstWindowNanos;
+            }
+            if (arrival.compareAndSet(current, next)) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Removes the buckets of clients that were not seen for a while.
+     * Such a bucket is full, so dropping it and creating a new one later changes nothing for the client.
+     * @param idleNanos how long a bucket must have been full before it is removed
+     * @return number of buckets removed
+     */
+    public int evictIdle(long idleNanos) {
+        long now = clock.getAsLong();
+        int sizeBefore = buckets.size();
+        buckets.values().removeIf(arrival -> now - arrival.get() > idleNanos);
+        return sizeBefore - buckets.size();
+    }
+
+    public int size() {
+        return buckets.size();
+    }
+}
@@ -0,0 +1,89 @@
+package ac.il.hit.final_project;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Load shedding filter for /jobs.
+ * Every request takes a slot from the limiter of its route class. When there is no free slot
+ * the request is answered right away with 503 + Retry-After instead of queueing in tomcat,
+ * so the requests we did accept keep their latency.
+ */
+public class ConcurrencyLimitFilter extends OncePerRequestFilter implements MeterBinder {
+
+    private static final byte[] OVERLOADED_BODY =
+            "{\"status\":503,\"error\":\"Service Unavailable\"}".getBytes(StandardCharsets.UTF_8);
+
+    private final Map<RouteClass, AdaptiveConcurrencyLimiter> limiters = new EnumMap<>(RouteClass.class);
+    private final String retryAfter;
+
+    public ConcurrencyLimitFilter(ConcurrencyLimitProperties properties) {
+        for (RouteClass routeClass : RouteClass.values()) {
+            limiters.put(routeClass, properties.limitFor(routeClass).newLimiter());
+        }
+        this.retryAfter = String.valueOf(properties.getRetryAfterSeconds());
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        RouteClass routeClass = RouteClass.of(request);
+        AdaptiveConcurrencyLimiter limiter = limiters.get(routeClass);
+        if (!limiter.tryAcquire()) {
+            response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+            response.setHeader(HttpHeaders.RETRY_AFTER, retryAfter);
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            response.setContentLength(OVERLOADED_BODY.length);
+            response.getOutputStream().write(OVERLOADED_BODY);
+            return;
+        }
+
+        long start = System.nanoTime();
+        boolean dropped = true;
+        try {
+            filterChain.doFilter(request, response);
+            dropped = response.getStatus() >= 500;
+        } finally {
+            if (routeClass.sampled()) {
+                limiter.release(System.nanoTime() - start, dropped);
+            } else {
+                limiter.release();
+            }
+        }
+    }
+
+    public AdaptiveConcurrencyLimiter limiterFor(RouteClass routeClass) {
+        return limiters.get(routeClass);
+    }
+
+    //jobs.concurrency.limit / inflight / rejected, tagged by route class
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        limiters.forEach((routeClass, limiter) -> {
+            Gauge.builder("jobs.concurrency.limit", limiter, AdaptiveConcurrencyLimiter::getLimit)
+                    .tag("route", routeClass.tag())
+                    .register(registry);
+            Gauge.builder("jobs.concurrency.inflight", limiter, AdaptiveConcurrencyLimiter::getInFlight)
+                    .tag("route", routeClass.tag())
+                    .register(registry);
+            FunctionCounter.builder("jobs.concurrency.rejected", limiter, AdaptiveConcurrencyLimiter::getRejected)
+                    .tag("route", routeClass.tag())
+                    .register(registry);
+        });
+    }
+}
@@ -0,0 +1,58 @@
+package ac.il.hit.final_project;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/*
+ * settings for the adaptive concurrency limiter in front of /jobs (jobs.concurrency.* in application.properties)
+ * every route class gets its own limit so a flood of password changes can't starve the cheap reads.
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "jobs.concurrency")
+public class ConcurrencyLimitProperties {
+
+    private boolean enabled = true;
+
+    //value of the Retry-After header sent with a 503
+    private int retryAfterSeconds = 1;
+
+    private Limit read = new Limit(50, 500);
+    private Limit write = new Limit(20, 100);
+    //BCrypt is cpu bound, more than a few in parallel only adds latency
+    private Limit password = new Limit(4, 16);
+    //exports aren't sampled, the limit stays at the initial one: a few at a time, each holds a db connection for long
+    private Limit export = new Limit(2, 2);
+
+    public Limit limitFor(RouteClass routeClass) {
+        return switch (routeClass) {
+            case READ -> read;
+            case WRITE -> write;
+            case PASSWORD -> password;
+            case EXPORT -> export;
+        };
+    }
+
+    @Getter
+    @Setter
+    public static class Limit {
+        private int initialLimit;
+        private int minLimit = 1;
+        private int maxLimit;
+        private double backoffRatio = 0.9;
+        private double tolerance = 2.0;
+
+        public Limit() {
+        }
+
+        public Limit(int initialLimit, int maxLimit) {
+            this.initialLimit = initialLimit;
+            this.maxLimit = maxLimit;
+        }
+
+        public AdaptiveConcurrencyLimiter newLimiter() {
+            return new AdaptiveConcurrencyLimiter(initialLimit, minLimit, maxLimit, backoffRatio, tolerance);
+        }
+    }
+}
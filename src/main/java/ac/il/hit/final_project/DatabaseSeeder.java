@@ -2,45 +2,75 @@ package ac.il.hit.final_project;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.boot.CommandLineRunner;
-import org.springframework.context.annotation.Bean;
-import org.springframework.context.annotation.Configuration;
-import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
 
+import java.util.concurrent.Executor;
 
-// defines a Spring bean and a CommandLineRunner that initializes a database using a JpaRepository
-@Configuration //It defines a configuration class that contains bean definitions
+
+// seeds the database with initial data once the application is ready
+@Component
 public class DatabaseSeeder {
 
     private static final Logger logger = LoggerFactory.getLogger(DatabaseSeeder.class);
 
     /*
-     * bean is an object that is managed by Spring ( for creating, configuring, and managing the lifecycle)
-     * Create a Spring bean that implements CommandLineRunner
-     * CommandLineRunner- Spring interface for classes that should run when the application starts.
-     * Inject a JpaRepository into this bean
+     * jobs.seed.mode:
+     * async - (default) seed on a background thread once the application is ready. the seed jobs hash their
+     *         passwords with BCrypt, which would otherwise add to the time until the first request is served.
+     * sync  - seed on the startup thread before the application counts as started (the tests use it,
+     *         they expect the seed jobs to be there)
+     * off   - don't seed
      */
-    @Bean
-    CommandLineRunner initDatabase(JpaRepository jobRepository) {
-        return args -> {
-            logger.info("Seeding database with initial data...");
+    public enum Mode { SYNC, ASYNC, OFF }
+
+    private final JobService jobService;
+    private final Executor executor;
+    private final Mode mode;
+
+    public DatabaseSeeder(JobService jobService,
+                          @Qualifier(TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME) Executor executor,
+                          @Value("${jobs.seed.mode:async}") Mode mode) {
+        this.jobService = jobService;
+        this.executor = executor;
+        this.mode = mode;
+    }
+
+    //runs after the other ApplicationReadyEvent listeners (e.g. JobNameIndex.rebuild), the seed jobs reach them as JobChangedEvents
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(Ordered.LOWEST_PRECEDENCE)
+    public void onApplicationReady() {
+        switch (mode) {
+            case SYNC -> seed();
+            case ASYNC -> executor.execute(this::seed);
+            case OFF -> logger.info("Database seeding is off");
+        }
+    }
 
-            //String jobName,String jobType, String status
-            Job job1 = new Job("job numer 1", "regular", 200, "111");
-            Job job2 = new Job("job numer 2", "error", 404, "222");
-            Job job3 = new Job("job numer 3", "creation", 204, "333");
+    void seed() {
+        logger.info("Seeding database with initial data...");
 
-            jobRepository.save(job1);
-            logger.info("Created Job: {}", job1);
+        //String jobName,String jobType, String status
+        Job job1 = new Job("job numer 1", "regular", 200, "111");
+        Job job2 = new Job("job numer 2", "error", 404, "222");
+        Job job3 = new Job("job numer 3", "creation", 204, "333");
 
-            jobRepository.save(job2);
-            logger.info("Created Job: {}", job2);
+        //through the service, so the caches and the name index hear about the new jobs
+        jobService.saveJob(job1);
+        logger.info("Created Job: {}", job1);
 
-            jobRepository.save(job3);
-            logger.info("Created Job: {}", job3);
+        jobService.saveJob(job2);
+        logger.info("Created Job: {}", job2);
 
-            logger.info("Database seeding completed.");
+        jobService.saveJob(job3);
+        logger.info("Created Job: {}", job3);
 
-        };
+        logger.info("Database seeding completed.");
     }
-}
\ No newline at end of file
+}
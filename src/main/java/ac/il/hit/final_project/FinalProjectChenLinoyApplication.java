@@ -2,8 +2,10 @@ package ac.il.hit.final_project;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 public class FinalProjectChenLinoyApplication {
 
 	public static void main(String[] args) {
@@ -0,0 +1,9 @@
+package ac.il.hit.final_project;
+
+//thrown when a request fails validation (400), error tells which check failed
+public class InvalidJobException extends JobApiException {
+
+    public InvalidJobException(JobError error) {
+        super(error);
+    }
+}
@@ -1,7 +1,11 @@
 package ac.il.hit.final_project;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 import lombok.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.DynamicUpdate;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 
 import java.time.LocalDateTime;
@@ -9,13 +13,36 @@ import java.time.LocalDateTime;
 /**
  * Job entity class.
  * This class is mapped to a database table named app_job.
+ * Jobs are kept in the "job" region of the hibernate second level cache (see ehcache.xml),
+ * hibernate keeps the region up to date on every save/delete and drops it on bulk update queries.
+ * jobType is dictionary encoded: the row holds the small id of the type in job_type (see JobTypeDictionary),
+ * the entity keeps the name, so nothing changes for the api.
+ * updates are dynamic: the UPDATE statement only sets the columns that changed (plus updated_at and version),
+ * so a PATCH of the name doesn't write the password hash and every other column back.
  */
 @Data
 @Entity
 @NoArgsConstructor
-@Table(name = "app_job")
+@Table(name = "app_job", indexes = {
+        //composite indexes for the combinations of GET /jobs/query: equality columns first, then the createdAt range
+        @Index(name = "idx_job_status_created", columnList = "status, created_at"),
+        @Index(name = "idx_job_type_created", columnList = "job_type_id, created_at"),
+        @Index(name = "idx_job_status_type_created", columnList = "status, job_type_id, created_at"),
+        @Index(name = "idx_job_created", columnList = "created_at"),
+        //the lease reaper looks for expired leases
+        @Index(name = "idx_job_lease_expires", columnList = "lease_expires_at"),
+        //delta sync (GET /jobs/changes) reads the jobs changed after a watermark, in this order
+        @Index(name = "idx_job_updated", columnList = "updated_at, id")
+})
+@EntityListeners(JobTypeListener.class)
+@DynamicUpdate
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = Job.CACHE_REGION)
 public class Job {
 
+    public static final String CACHE_REGION = "job";
+    public static final String QUERY_CACHE_REGION = "job-queries";
+
     @Id
     @GeneratedValue(strategy = GenerationType.AUTO) //automaticliy generated id by the db deafult method
     private Long id;
@@ -23,9 +50,35 @@ public class Job {
     private Integer status;
     private LocalDateTime createdAt;
     private LocalDateTime updatedAt;
+    @Convert(converter = JobTypeConverter.class)
+    @Column(name = "job_type_id")
     private String jobType;
     private String password;
 
+    //the dictionary entry of jobType, read only (the id is written through jobType). gives app_job its foreign key
+    //and lets queries join the name, e.g. to sort by it
+    @JsonIgnore
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "job_type_id", insertable = false, updatable = false,
+            foreignKey = @ForeignKey(name = "fk_job_job_type"))
+    private JobType jobTypeRef;
+
+    //optimistic locking: a write based on an old copy of the row fails instead of overwriting a newer one
+    @Version
+    @JsonIgnore
+    private Long version;
+
+    //lease of a worker that claimed the job (see JobLeaseService), all null while nobody holds it
+    @JsonIgnore
+    private String leaseOwner;
+    @JsonIgnore
+    private LocalDateTime leaseExpiresAt;
+    //status the job had when it was claimed, it goes back to it if the lease expires
+    @JsonIgnore
+    private Integer leasedFromStatus;
+
     //constractur without password
     public Job(String jobName, String jobType, Integer status) {
         this(jobName, jobType, status, "");
@@ -48,6 +101,27 @@ public class Job {
         this.password = passwordEncoder.encode(password);
     }
 
+    /*
+     * copy of the job that no session knows about, with every column but without jobTypeRef.
+     * reads shared between threads (see JobReadCoalescer) hand these out instead of the loaded entity,
+     * which belongs to the session of the thread that loaded it
+     */
+    public Job detachedCopy() {
+        Job copy = new Job();
+        copy.id = id;
+        copy.jobName = jobName;
+        copy.status = status;
+        copy.createdAt = createdAt;
+        copy.updatedAt = updatedAt;
+        copy.jobType = jobType;
+        copy.password = password;
+        copy.version = version;
+        copy.leaseOwner = leaseOwner;
+        copy.leaseExpiresAt = leaseExpiresAt;
+        copy.leasedFromStatus = leasedFromStatus;
+        return copy;
+    }
+
     /*
     public void setStatus(Integer status){
         if(status<100 || status>999){
@@ -55,6 +129,16 @@ public class Job {
         else this.status=status;
     }*/
 
+    @PrePersist //is invoked before a new entity is inserted, jobs that came in as json have no times yet
+    protected void onCreate() {
+        LocalDateTime now = LocalDateTime.now();
+        if (this.createdAt == null) {
+            this.createdAt = now;
+        }
+        //the time it is written, GET /jobs/changes relies on it
+        this.updatedAt = now;
+    }
+
     @PreUpdate //is invoked before an entity is updated in the database
     protected void onUpdate() {
         this.updatedAt = LocalDateTime.now();
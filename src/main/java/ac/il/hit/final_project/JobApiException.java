@@ -0,0 +1,29 @@
+package ac.il.hit.final_project;
+
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * Base of the typed exceptions of the jobs api (JobNotFoundException, InvalidJobException).
+ * They are expected outcomes and not bugs, so no stack trace is captured: filling it in walks the whole
+ * stack of the request thread (a few hundred frames under spring) and is most of the cost of throwing.
+ * Being ResponseStatusExceptions, they carry the http status and reason to whoever catches them,
+ * JobErrorHandler turns them into the prepared response of their JobError.
+ */
+public abstract class JobApiException extends ResponseStatusException {
+
+    private final JobError error;
+
+    protected JobApiException(JobError error) {
+        super(error.status(), error.reason());
+        this.error = error;
+    }
+
+    public JobError getError() {
+        return error;
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return this;
+    }
+}
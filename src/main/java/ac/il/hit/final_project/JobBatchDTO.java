@@ -0,0 +1,18 @@
+package ac.il.hit.final_project;
+
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import lombok.Value;
+
+import java.util.List;
+
+/*
+ * response of GET/POST /jobs/batch
+ * jobs    - the jobs that were found, in the order their ids were requested
+ * missing - the requested ids that don't exist (anymore)
+ */
+@Value
+@JsonPropertyOrder({"jobs", "missing"})
+public class JobBatchDTO {
+    List<JobDTO> jobs;
+    List<Long> missing;
+}
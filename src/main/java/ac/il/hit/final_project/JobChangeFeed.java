@@ -0,0 +1,154 @@
+package ac.il.hit.final_project;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * delta sync of the jobs for clients that keep a mirror of them (GET /jobs/changes).
+ * a client passes the watermark of its last sync and gets the jobs whose updatedAt is after it
+ * (idx_job_updated, Job.onCreate / Job.onUpdate keep updatedAt) and the tombstones of the jobs deleted after it,
+ * so a refresh costs O(changes) and not O(table).
+ * the watermark is a (time, id) pair and changes are ordered by it, so a page can end in the middle of
+ * many changes that share one time (a bulk update) and the next page goes on right after the last one returned.
+ *
+ * updatedAt is taken when the row is written, but the row is only visible once its transaction commits.
+ * a watermark is therefore never later than now - lag, not even when since was: a change that wasn't committed
+ * yet when the client asked is still after the watermark it got. changes newer than that are returned too,
+ * and again the next time, which is harmless for a mirror (upsert / remove by id).
+ */
+@Service
+public class JobChangeFeed {
+
+    private static final Logger logger = LoggerFactory.getLogger(JobChangeFeed.class);
+
+    static final int MAX_LIMIT = 10_000;
+    //the since of a first sync, before any job
+    private static final LocalDateTime BEGINNING = LocalDateTime.of(1970, 1, 1, 0, 0);
+
+    private final JobRepository jobRepository;
+    private final JobTombstoneRepository tombstoneRepository;
+    private final Duration lag;
+    private final Duration tombstoneRetention;
+
+    public JobChangeFeed(JobRepository jobRepository, JobTombstoneRepository tombstoneRepository,
+                         @Value("${jobs.changes.lag:2s}") Duration lag,
+                         @Value("${jobs.changes.tombstone-retention:7d}") Duration tombstoneRetention) {
+        this.jobRepository = jobRepository;
+        this.tombstoneRepository = tombstoneRepository;
+        this.lag = lag;
+        this.tombstoneRetention = tombstoneRetention;
+    }
+
+    //runs inside the transaction of deleteJob, the tombstone commits together with the delete
+    @EventListener
+    public void onJobChanged(JobChangedEvent event) {
+        if (event.getKind() == JobChangedEvent.Kind.DELETED) {
+            tombstoneRepository.save(new JobTombstone(event.getJobId(), LocalDateTime.now()));
+        }
+    }
+
+    //a job or a tombstone, in the order they happened (ties by job id)
+    private record Change(LocalDateTime at, long id, Job job, JobTombstone tombstone) {
+
+        boolean isBefore(Change other) {
+            int byTime = at.compareTo(other.at);
+            return byTime != 0 ? byTime < 0 : id < other.id;
+        }
+    }
+
+    /**
+     * Returns the changes after a watermark, oldest first
+     * @param since watermark of the last sync, null for a first sync (all jobs)
+     * @param sinceId watermarkId of the last sync, 0 for all the changes at since
+     * @param limit max number of changed and deleted jobs together
+     * @return the changes and the watermark for the next request
+     * @throws InvalidJobException if the limit is illegal
+     * @throws ResyncRequiredException if since is older than the tombstone retention
+     */
+    @Transactional(readOnly = true)
+    public JobChangesDTO findChanges(LocalDateTime since, long sinceId, int limit) {
+        if (limit < 1 || limit > MAX_LIMIT) {
+            throw new InvalidJobException(JobError.ILLEGAL_LIMIT);
+        }
+        LocalDateTime now = LocalDateTime.now();
+        if (since != null && since.isBefore(now.minus(tombstoneRetention))) {
+            //the tombstones of that time are gone, the client can't know what was deleted since
+            throw new ResyncRequiredException();
+        }
+        LocalDateTime from = since != null ? since : BEGINNING;
+        long fromId = since != null ? sinceId : 0;
+        LocalDateTime safeUntil = now.minus(lag);
+
+        List<Job> jobs = jobRepository.findChangedSince(from, fromId, PageRequest.of(0, limit + 1));
+        //a first sync starts from the current jobs, there is nothing to delete yet
+        List<JobTombstone> tombstones = since != null
+                ? tombstoneRepository.findDeletedSince(from, fromId, PageRequest.of(0, limit + 1)) : List.of();
+        List<Change> changes = merge(jobs, tombstones, limit + 1);
+
+        boolean hasMore = changes.size() > limit;
+        //(safeUntil, 0) is before every change at safeUntil, they all come again
+        LocalDateTime watermark = safeUntil;
+        long watermarkId = 0;
+        if (hasMore) {
+            changes = changes.subList(0, limit);
+            Change last = changes.get(limit - 1);
+            if (last.at().isAfter(safeUntil)) {
+                //the page reaches into the lag, ask again once it passed
+                hasMore = false;
+            } else {
+                watermark = last.at();
+                watermarkId = last.id();
+            }
+        }
+
+        List<JobDTO> changed = new ArrayList<>();
+        List<Long> deleted = new ArrayList<>();
+        for (Change change : changes) {
+            if (change.job() != null) {
+                changed.add(new JobDTO(change.job()));
+            } else {
+                deleted.add(change.tombstone().getJobId());
+            }
+        }
+        return new JobChangesDTO(changed, deleted, watermark, watermarkId, hasMore);
+    }
+
+    private static List<Change> merge(List<Job> jobs, List<JobTombstone> tombstones, int max) {
+        List<Change> changes = new ArrayList<>(Math.min(max, jobs.size() + tombstones.size()));
+        int j = 0;
+        int t = 0;
+        while (changes.size() < max && (j < jobs.size() || t < tombstones.size())) {
+            Change job = j < jobs.size() ? new Change(jobs.get(j).getUpdatedAt(), jobs.get(j).getId(), jobs.get(j), null) : null;
+            Change tombstone = t < tombstones.size()
+                    ? new Change(tombstones.get(t).getDeletedAt(), tombstones.get(t).getJobId(), null, tombstones.get(t)) : null;
+            if (tombstone == null || (job != null && job.isBefore(tombstone))) {
+                changes.add(job);
+                j++;
+            } else {
+                changes.add(tombstone);
+                t++;
+            }
+        }
+        return changes;
+    }
+
+    @Scheduled(fixedDelayString = "${jobs.changes.tombstone-sweep-interval-ms:3600000}")
+    @Transactional
+    public void pruneTombstones() {
+        int pruned = tombstoneRepository.deleteOlderThan(LocalDateTime.now().minus(tombstoneRetention));
+        if (pruned > 0) {
+            logger.info("Pruned {} job tombstones", pruned);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package ac.il.hit.final_project;
+
+import lombok.Value;
+
+import java.util.Objects;
+
+/**
+ * Published by JobService after every write.
+ * before is null for a created job, after is null for a deleted job.
+ * Listeners that must only see committed data use @TransactionalEventListener(fallbackExecution = true),
+ * which runs after the commit, or right away when the write did not run in a transaction.
+ */
+@Value
+public class JobChangedEvent {
+
+    public enum Kind { CREATED, UPDATED, DELETED }
+
+    Kind kind;
+    Long jobId;
+    JobSnapshot before;
+    JobSnapshot after;
+
+    public static JobChangedEvent created(Job job) {
+        return new JobChangedEvent(Kind.CREATED, job.getId(), null, JobSnapshot.of(job));
+    }
+
+    public static JobChangedEvent updated(JobSnapshot before, Job job) {
+        return new JobChangedEvent(Kind.UPDATED, job.getId(), before, JobSnapshot.of(job));
+    }
+
+    public static JobChangedEvent deleted(JobSnapshot before) {
+        return new JobChangedEvent(Kind.DELETED, before.getId(), before, null);
+    }
+
+    //true if the status before and after the write differ (also true for create/delete)
+    public boolean statusChanged() {
+        return before == null || after == null || !Objects.equals(before.getStatus(), after.getStatus());
+    }
+}
@@ -0,0 +1,26 @@
+package ac.il.hit.final_project;
+
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import lombok.Value;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/*
+ * response of GET /jobs/changes
+ * changed   - jobs created or modified after the watermark of the request (upsert them)
+ * deleted   - ids of jobs deleted after it (remove them)
+ * watermark   - pass it as since of the next request
+ * watermarkId - pass it as sinceId of the next request (the id of the last change at the watermark,
+ *               several changes can share one time)
+ * hasMore     - the page was full, ask again right away
+ */
+@Value
+@JsonPropertyOrder({"changed", "deleted", "watermark", "watermarkId", "hasMore"})
+public class JobChangesDTO {
+    List<JobDTO> changed;
+    List<Long> deleted;
+    LocalDateTime watermark;
+    long watermarkId;
+    boolean hasMore;
+}
@@ -0,0 +1,233 @@
+package ac.il.hit.final_project;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/*
+ * writes jobs in "JCOL", a small self describing columnar format for analytics that read whole columns.
+ * the rows are written in row groups: a group is buffered, then written one column after the other,
+ * so memory stays at one row group no matter how big the table is.
+ *
+ * all integers are varints (7 bits per byte, low bits first), signed ones zigzag encoded first.
+ * a string is its utf-8 length as a varint, then the bytes.
+ *   header     "JCOL", version, column count, then per column: name, type, encoding
+ *   row group  row count, then per column: the byte length of the column block and the block
+ *              (a reader skips the columns it doesn't need)
+ *   end        a row group with row count 0, then the total number of rows
+ * a column block starts with the number of nulls in it, if there are any a bitmap follows (bit set = null,
+ * one bit per row, lowest bit first). only the values of the other rows are written, in one of the encodings:
+ *   PLAIN      - the values one after the other (jobName)
+ *   DELTA      - the difference to the previous value of the block, zigzag encoded (id, createdAt, updatedAt).
+ *                rows come in id order, so ids and times mostly grow by a little and take 1-3 bytes.
+ *                times are epoch milliseconds of the local date time read as UTC
+ *   DICTIONARY - the distinct values of the block (count, then the values), then per row the index of its value
+ *                (status, jobType: a handful of distinct values, one byte per row)
+ */
+public class JobColumnarWriter {
+
+    static final byte[] MAGIC = {'J', 'C', 'O', 'L'};
+    static final int VERSION = 1;
+
+    //type and encoding codes in the header
+    static final int TYPE_INT32 = 1;
+    static final int TYPE_INT64 = 2;
+    static final int TYPE_STRING = 3;
+    static final int TYPE_TIMESTAMP_MILLIS = 4;
+    static final int ENCODING_PLAIN = 1;
+    static final int ENCODING_DELTA = 2;
+    static final int ENCODING_DICTIONARY = 3;
+
+    enum Column {
+        ID("id", TYPE_INT64, ENCODING_DELTA),
+        JOB_NAME("jobName", TYPE_STRING, ENCODING_PLAIN),
+        STATUS("status", TYPE_INT32, ENCODING_DICTIONARY),
+        JOB_TYPE("jobType", TYPE_STRING, ENCODING_DICTIONARY),
+        CREATED_AT("createdAt", TYPE_TIMESTAMP_MILLIS, ENCODING_DELTA),
+        UPDATED_AT("updatedAt", TYPE_TIMESTAMP_MILLIS, ENCODING_DELTA);
+
+        final String columnName;
+        final int type;
+        final int encoding;
+
+        Column(String columnName, int type, int encoding) {
+            this.columnName = columnName;
+            this.type = type;
+            this.encoding = encoding;
+        }
+    }
+
+    private final OutputStream out;
+    private final int rowGroupSize;
+    private final List<JobExportRow> rowGroup;
+    private final ByteArrayOutputStream block = new ByteArrayOutputStream(64 * 1024);
+    private long rows;
+    private boolean headerWritten;
+
+    /**
+     * @param out where the file goes, buffer it (the writer writes many small pieces). it isn't closed by the writer
+     * @param rowGroupSize rows per row group
+     */
+    public JobColumnarWriter(OutputStream out, int rowGroupSize) {
+        if (rowGroupSize < 1) {
+            throw new IllegalArgumentException("Illegal row group size");
+        }
+        this.out = out;
+        this.rowGroupSize = rowGroupSize;
+        this.rowGroup = new ArrayList<>(rowGroupSize);
+    }
+
+    public void write(JobExportRow row) throws IOException {
+        rowGroup.add(row);
+        if (rowGroup.size() == rowGroupSize) {
+            flushRowGroup();
+        }
+    }
+
+    /**
+     * Writes the last row group and the end of the file
+     * @return number of rows written
+     */
+    public long finish() throws IOException {
+        flushRowGroup();
+        writeHeader();
+        writeVarLong(out, 0);
+        writeVarLong(out, rows);
+        out.flush();
+        return rows;
+    }
+
+    private void writeHeader() throws IOException {
+        if (headerWritten) {
+            return;
+        }
+        headerWritten = true;
+        out.write(MAGIC);
+        writeVarLong(out, VERSION);
+        writeVarLong(out, Column.values().length);
+        for (Column column : Column.values()) {
+            writeString(out, column.columnName);
+            writeVarLong(out, column.type);
+            writeVarLong(out, column.encoding);
+        }
+    }
+
+    private void flushRowGroup() throws IOException {
+        writeHeader();
+        if (rowGroup.isEmpty()) {
+            return;
+        }
+        writeVarLong(out, rowGroup.size());
+        writeDelta(JobExportRow::getId);
+        writePlain(JobExportRow::getJobName);
+        writeDictionary(JobExportRow::getStatus);
+        writeDictionary(JobExportRow::getJobType);
+        writeDelta(row -> epochMillis(row.getCreatedAt()));
+        writeDelta(row -> epochMillis(row.getUpdatedAt()));
+        rows += rowGroup.size();
+        rowGroup.clear();
+    }
+
+    private void writeDelta(Function<JobExportRow, Long> column) throws IOException {
+        block.reset();
+        writeNulls(column);
+        long previous = 0;
+        for (JobExportRow row : rowGroup) {
+            Long value = column.apply(row);
+            if (value != null) {
+                writeVarLong(block, zigzag(value - previous));
+                previous = value;
+            }
+        }
+        writeBlock();
+    }
+
+    private void writePlain(Function<JobExportRow, String> column) throws IOException {
+        block.reset();
+        writeNulls(column);
+        for (JobExportRow row : rowGroup) {
+            String value = column.apply(row);
+            if (value != null) {
+                writeString(block, value);
+            }
+        }
+        writeBlock();
+    }
+
+    private <V> void writeDictionary(Function<JobExportRow, V> column) throws IOException {
+        block.reset();
+        writeNulls(column);
+        Map<V, Integer> dictionary = new LinkedHashMap<>();
+        for (JobExportRow row : rowGroup) {
+            V value = column.apply(row);
+            if (value != null) {
+                dictionary.putIfAbsent(value, dictionary.size());
+            }
+        }
+        writeVarLong(block, dictionary.size());
+        for (V value : dictionary.keySet()) {
+            if (value instanceof Integer number) {
+                writeVarLong(block, zigzag(number));
+            } else {
+                writeString(block, (String) value);
+            }
+        }
+        for (JobExportRow row : rowGroup) {
+            V value = column.apply(row);
+            if (value != null) {
+                writeVarLong(block, dictionary.get(value));
+            }
+        }
+        writeBlock();
+    }
+
+    private void writeNulls(Function<JobExportRow, ?> column) throws IOException {
+        byte[] bitmap = new byte[(rowGroup.size() + 7) / 8];
+        int nulls = 0;
+        for (int i = 0; i < rowGroup.size(); i++) {
+            if (column.apply(rowGroup.get(i)) == null) {
+                bitmap[i / 8] |= (byte) (1 << (i % 8));
+                nulls++;
+            }
+        }
+        writeVarLong(block, nulls);
+        if (nulls > 0) {
+            block.write(bitmap);
+        }
+    }
+
+    private void writeBlock() throws IOException {
+        writeVarLong(out, block.size());
+        block.writeTo(out);
+    }
+
+    static Long epochMillis(LocalDateTime time) {
+        return time != null ? time.toInstant(ZoneOffset.UTC).toEpochMilli() : null;
+    }
+
+    static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static void writeVarLong(OutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    static void writeString(OutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(out, bytes.length);
+        out.write(bytes);
+    }
+}
@@ -1,10 +1,12 @@
 package ac.il.hit.final_project;
 
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
-import org.springframework.web.server.ResponseStatusException;
 
+import java.io.IOException;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.stream.Collectors;
@@ -14,14 +16,27 @@ import java.util.stream.Collectors;
  * `@ -GetMapping("/jobs")`: Retrieve all jobs.
  * `@ -PostMapping("/jobs")`: Create a new job.
  * `@ -GetMapping("/jobs/{id}")`: Retrieve a job by ID.
+ * `@ -GetMapping("/jobs/batch?ids=")`: Retrieve many jobs by ID in one request (POST with the ids in the body for long lists).
  * `@ -PutMapping("/jobs/{id}")`: Update a job.
+ * `@ -PatchMapping("/jobs/{id}")`: Update only the fields sent in the body.
  * `@ -DeleteMapping("/jobs/{id}")`: Delete a job.
  * `@ -GetMapping("/jobs/status/{status}")`: Retrieve jobs by status.
  * `@ -GetMapping("/jobs/jobType/{jobType}")`: Retrieve jobs by job type.
  * `@ -GetMapping("/jobs/date-range")`: Retrieve jobs by a date range.
+ * `@ -GetMapping("/jobs/search?q=")`: Search jobs by a fragment of their name.
+ * `@ -GetMapping("/jobs/query")`: Retrieve jobs by any combination of status, job type and date ranges.
+ * `@ -GetMapping("/jobs/changes?since=")`: Retrieve the jobs changed and deleted after a watermark (delta sync).
+ * `@ -GetMapping("/jobs/export?format=")`: Export all jobs for analytics, columnar (default) or ndjson.
  * aditional:
  *  @PutMapping("/{id}/password"): update job password
  *  @PutMapping("/{id}/status"): update job status
+ * worker leases:
+ *  @PostMapping("/claim"): claim up to N jobs for a worker
+ *  @PostMapping("/{id}/lease/renew"): extend the lease of a claimed job
+ *  @PostMapping("/{id}/lease/release"): give a claimed job back, optionally with its final status
+ * errors:
+ *  JobService throws typed, stackless exceptions (JobNotFoundException 404, InvalidJobException 400),
+ *  they pass through the controller as they are and JobErrorHandler sends their prepared response.
  */
 
 /**
@@ -34,9 +49,16 @@ import java.util.stream.Collectors;
 public class JobController {
 
     private final JobService jobService;
+    private final JobLeaseService jobLeaseService;
+    private final JobChangeFeed jobChangeFeed;
+    private final JobExport jobExport;
 
-    public JobController(JobService jobService) {
+    public JobController(JobService jobService, JobLeaseService jobLeaseService, JobChangeFeed jobChangeFeed,
+                         JobExport jobExport) {
         this.jobService = jobService;
+        this.jobLeaseService = jobLeaseService;
+        this.jobChangeFeed = jobChangeFeed;
+        this.jobExport = jobExport;
     }
 
     //`@ -GetMapping("/jobs")`: Retrieve all jobs.
@@ -54,15 +76,12 @@ public class JobController {
     }
 
     //@ -PostMapping("/jobs")`: Create a new job.
+    //400 if the status is illegal
     @PostMapping
     public ResponseEntity<JobDTO> createJob(@RequestBody Job job){
-        try {
-            Job savedJob = jobService.saveJob(job);
-            //return status 201 CREATED
-            return ResponseEntity.status(HttpStatus.CREATED).body(new JobDTO(savedJob));
-        } catch (RuntimeException e) {
-            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
-        }
+        Job savedJob = jobService.saveJob(job);
+        //return status 201 CREATED
+        return ResponseEntity.status(HttpStatus.CREATED).body(new JobDTO(savedJob));
     }
 
     //`@ -GetMapping("/jobs/{id}")`: Retrieve a job by ID.
@@ -74,31 +93,45 @@ public class JobController {
                 .orElse(ResponseEntity.notFound().build());
     }
 
+    //`@ -GetMapping("/jobs/batch?ids=1,2,3")`: Retrieve many jobs by ID in one request.
+    //the found jobs come back in the order of the ids, the ids that don't exist are listed in missing.
+    //400 if there are no ids or more than 1000
+    @GetMapping("/batch")
+    public ResponseEntity<JobBatchDTO> getJobsByIds(@RequestParam List<Long> ids) {
+        return ResponseEntity.ok(jobService.findJobsByIds(ids));
+    }
+
+    //same as GET /jobs/batch, with the ids as a json array in the body (for lists too long for a url)
+    @PostMapping("/batch")
+    public ResponseEntity<JobBatchDTO> postJobsByIds(@RequestBody List<Long> ids) {
+        return ResponseEntity.ok(jobService.findJobsByIds(ids));
+    }
+
     //`@ -PutMapping("/jobs/{id}")`: Update a job.
-    //returning status 204-no content without returning the updated job
+    //returning status 204-no content without returning the updated job, 400 if the status is illegal, 404 if there is no such job
     @PutMapping("/{id}")
     public ResponseEntity<Void> updateJob(@PathVariable Long id, @RequestBody Job job){
-        try {
-            jobService.updateJob(id, job);
-            return ResponseEntity.noContent().build();
-        } catch (RuntimeException e) {
-            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
-        }
+        jobService.updateJob(id, job);
+        return ResponseEntity.noContent().build();
     }
     //PUT: Used to fully update or create a specific resource
 
+    //`@ -PatchMapping("/jobs/{id}")`: Update only the fields sent in the body, e.g. {"jobName": "new name"}.
+    //returns the patched job, 400 if the status is illegal, 404 if there is no such job
+    @PatchMapping("/{id}")
+    public ResponseEntity<JobDTO> patchJob(@PathVariable Long id, @RequestBody JobPatchRequest patchRequest){
+        return ResponseEntity.ok(new JobDTO(jobService.patchJob(id, patchRequest)));
+    }
+
     //`@ -DeleteMapping("/jobs/{id}")`: Delete a job.
     @DeleteMapping("/{id}")
     public ResponseEntity<Void> deleteJob(@PathVariable long id){
         // returns an HTTP Response with empty body and status code 204.
         // adds no-content header to the response
         //  return ResponseEntity.noContent().build();
-        try {
-            jobService.deleteJob(id);
-            return ResponseEntity.noContent().build();
-        } catch (RuntimeException e) {
-            throw new ResponseStatusException(HttpStatus.NOT_FOUND, e.getMessage(), e);
-        }
+        //404 if there is no such job
+        jobService.deleteJob(id);
+        return ResponseEntity.noContent().build();
     }
 
     //`@ -GetMapping("/jobs/status/{status}")`: Retrieve jobs by status.
@@ -131,28 +164,81 @@ public class JobController {
 
 
 
-    //allows the change of an old password to a new one
+    //`@ -GetMapping("/jobs/query")`: Retrieve jobs by any combination of criteria in one query,
+    //e.g. /jobs/query?status=500&jobType=error&createdFrom=2024-07-01T10:00:00&limit=50 (see JobQuery)
+    @GetMapping("/query")
+    public ResponseEntity<List<JobDTO>> queryJobs(@ModelAttribute JobQuery jobQuery) {
+        List<Job> jobs = jobService.findJobsByQuery(jobQuery);
+        List<JobDTO> jobDTOs = jobs.stream().map(JobDTO::new).collect(Collectors.toList());
+        return ResponseEntity.ok(jobDTOs);
+    }
+
+    //`@ -GetMapping("/jobs/changes?since=&sinceId=")`: Retrieve the jobs changed and deleted after the watermark of the last call.
+    //without since it returns all jobs (a first sync). the response has the watermark (and watermarkId) for the next call,
+    //400 if the limit is illegal (1..10000, default 1000), 410 if since is older than the kept tombstones
+    @GetMapping("/changes")
+    public ResponseEntity<JobChangesDTO> getChanges(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime since,
+            @RequestParam(defaultValue = "0") long sinceId,
+            @RequestParam(defaultValue = "1000") int limit) {
+        return ResponseEntity.ok(jobChangeFeed.findChanges(since, sinceId, limit));
+    }
+
+    //`@ -GetMapping("/jobs/export?format=columnar")`: Export all jobs, streamed as they are read.
+    //columnar is JCOL (see JobColumnarWriter), ndjson one json object per line. 400 if the format is unknown
+    @GetMapping("/export")
+    public void exportJobs(@RequestParam(defaultValue = "columnar") String format, HttpServletResponse response) throws IOException {
+        JobExport.Format exportFormat = JobExport.Format.of(format);
+        response.setContentType(exportFormat.contentType());
+        response.setHeader("Content-Disposition", "attachment; filename=\"jobs" + exportFormat.fileExtension() + "\"");
+        jobExport.export(exportFormat, response.getOutputStream());
+    }
+
+    //`@ -GetMapping("/jobs/search?q=")`: Search jobs by a fragment of their name (case insensitive).
+    //prefix matches come first, limit is 1..100 (default 20)
+    @GetMapping("/search")
+    public ResponseEntity<List<JobDTO>> searchJobs(@RequestParam("q") String query,
+                                                   @RequestParam(defaultValue = "20") int limit) {
+        List<Job> jobs = jobService.searchJobsByName(query, limit);
+        List<JobDTO> jobDTOs = jobs.stream().map(JobDTO::new).collect(Collectors.toList());
+        return ResponseEntity.ok(jobDTOs);
+    }
+
+    //allows the change of an old password to a new one, 400 if the old one is wrong, 404 if there is no such job
     @PutMapping("/{id}/password")
     public ResponseEntity<JobDTO> updateJobPassword(@PathVariable Long id, @RequestBody UpdatePasswordRequest passwordRequest){
-        try {
-            Job job = jobService.updateJobPassword(id, passwordRequest.getOldPassword(), passwordRequest.getNewPassword());
-            return ResponseEntity.ok(new JobDTO(job));
-        } catch (RuntimeException e) {
-            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
-        }
+        Job job = jobService.updateJobPassword(id, passwordRequest.getOldPassword(), passwordRequest.getNewPassword());
+        return ResponseEntity.ok(new JobDTO(job));
     }
 
-    //returns an empty body and status code 204 if uupdated status coretcliy else 400.
+    //returns an empty body and status code 204 if uupdated status coretcliy, 400 if the status is illegal, 404 if there is no such job
     @PutMapping("/status/{id}")
     public ResponseEntity<Void> updateJobStatus(@PathVariable Long id, @RequestBody Integer status)
     {
-        try {
-            jobService.updateJobStatus(id, status);
-            return ResponseEntity.noContent().build();
-        } catch (RuntimeException e) {
-            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
-        }
+        jobService.updateJobStatus(id, status);
+        return ResponseEntity.noContent().build();
     }
 
-}
+    //claims up to N jobs of a status (and job type) for a worker, each one with a lease.
+    //returns the claimed jobs with their lease expiry, an empty list if there was nothing to claim
+    //400 if the request is illegal
+    @PostMapping("/claim")
+    public ResponseEntity<List<JobLeaseDTO>> claimJobs(@RequestBody ClaimRequest claimRequest) {
+        List<Job> jobs = jobLeaseService.claimJobs(claimRequest);
+        List<JobLeaseDTO> leases = jobs.stream().map(JobLeaseDTO::new).collect(Collectors.toList());
+        return ResponseEntity.ok(leases);
+    }
+
+    //extends a lease, 409 if the worker doesn't hold it (anymore) or it was changed concurrently, 404 if there is no such job
+    @PostMapping("/{id}/lease/renew")
+    public ResponseEntity<JobLeaseDTO> renewLease(@PathVariable Long id, @RequestBody LeaseRequest leaseRequest) {
+        return ResponseEntity.ok(new JobLeaseDTO(jobLeaseService.renewLease(id, leaseRequest)));
+    }
 
+    //gives a claimed job back, 409 if the worker doesn't hold the lease (anymore) or it was changed concurrently
+    @PostMapping("/{id}/lease/release")
+    public ResponseEntity<JobDTO> releaseLease(@PathVariable Long id, @RequestBody LeaseRequest leaseRequest) {
+        return ResponseEntity.ok(new JobDTO(jobLeaseService.releaseLease(id, leaseRequest)));
+    }
+
+}
@@ -0,0 +1,41 @@
+package ac.il.hit.final_project;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * Persisted duration histogram of one jobType in one hour window, mapped to the table job_duration_sketch.
+ * histogram is the compressed HdrHistogram encoding, see JobDurationSketches.
+ * jobType is "" for jobs without a type, it is part of the primary key and can't be null.
+ */
+@Getter
+@Entity
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(name = "job_duration_sketch")
+@IdClass(JobDurationSketch.Key.class)
+public class JobDurationSketch {
+
+    @Id
+    private String jobType;
+    @Id
+    private LocalDateTime windowStart;
+
+    @Lob
+    private byte[] histogram;
+    private LocalDateTime savedAt;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private String jobType;
+        private LocalDateTime windowStart;
+    }
+}
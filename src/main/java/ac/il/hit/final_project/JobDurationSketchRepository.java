@@ -0,0 +1,18 @@
+package ac.il.hit.final_project;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+//persisted duration histograms, only JobDurationSketches reads and writes them
+public interface JobDurationSketchRepository extends JpaRepository<JobDurationSketch, JobDurationSketch.Key> {
+
+    //the windows of [from, to), jobType is optional (null matches everything)
+    @Query("SELECT s FROM JobDurationSketch s WHERE s.windowStart >= :from AND s.windowStart < :to"
+            + " AND (:jobType IS NULL OR s.jobType = :jobType)")
+    List<JobDurationSketch> findWindows(@Param("from") LocalDateTime from, @Param("to") LocalDateTime to,
+                                        @Param("jobType") String jobType);
+}
@@ -0,0 +1,227 @@
+package ac.il.hit.final_project;
+
+import jakarta.annotation.PreDestroy;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.IntCountsHistogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.zip.DataFormatException;
+
+/*
+ * duration percentiles per jobType without exporting the table.
+ * the duration of a job is the time from its createdAt until it reached a terminal status. it is recorded
+ * (after the commit) into an HdrHistogram of its jobType and of the hour window it finished in.
+ * a histogram has a fixed number of buckets (milliseconds up to 30 days, 2 significant digits, ~1% error), so every
+ * (jobType, hour) key takes the same small, constant amount of memory no matter how many jobs it counts.
+ * the windows count in ints (no hour finishes 2^31 jobs), ~14 KB each (27 KB with long counts), a week of 10 jobTypes is ~23 MB.
+ * histograms of the same configuration can be added up, a query just merges the windows of its range
+ * (into a histogram with long counts).
+ *
+ * changed windows are written to job_duration_sketch every minute (and on shutdown), and the recent
+ * windows are loaded back on startup. windows older than the memory retention only stay in the table,
+ * a query that reaches back that far reads them from there.
+ */
+@Service
+public class JobDurationSketches {
+
+    private static final Logger logger = LoggerFactory.getLogger(JobDurationSketches.class);
+
+    static final long MAX_TRACKABLE_MILLIS = Duration.ofDays(30).toMillis();
+    static final int SIGNIFICANT_DIGITS = 2;
+    static final ChronoUnit WINDOW = ChronoUnit.HOURS;
+    //most windows one query may merge (90 days)
+    static final int MAX_WINDOWS = 24 * 90;
+
+    private final JobDurationSketchRepository sketchRepository;
+    private final Duration memoryRetention;
+
+    private final ConcurrentMap<JobDurationSketch.Key, Window> windows = new ConcurrentHashMap<>();
+
+    //the histogram of one (jobType, hour), all fields are guarded by the window itself
+    private static final class Window {
+        final IntCountsHistogram histogram = newWindowHistogram();
+        long changes;
+        long persistedChanges;
+    }
+
+    public JobDurationSketches(JobDurationSketchRepository sketchRepository,
+                               @Value("${jobs.durations.memory-retention:7d}") Duration memoryRetention) {
+        this.sketchRepository = sketchRepository;
+        this.memoryRetention = memoryRetention;
+    }
+
+    //1xx means still running and 202 accepted (queued), every other status is a final outcome
+    static boolean isTerminalStatus(Integer status) {
+        return status != null && status >= 200 && status != 202;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onJobChanged(JobChangedEvent event) {
+        JobSnapshot before = event.getBefore();
+        JobSnapshot after = event.getAfter();
+        //only the transition into a terminal status, a job created as finished has no duration
+        if (before == null || after == null || after.getCreatedAt() == null
+                || isTerminalStatus(before.getStatus()) || !isTerminalStatus(after.getStatus())) {
+            return;
+        }
+        record(after.getJobType(), after.getCreatedAt(), LocalDateTime.now());
+    }
+
+    void record(String jobType, LocalDateTime createdAt, LocalDateTime finishedAt) {
+        long millis = Math.max(0, Duration.between(createdAt, finishedAt).toMillis());
+        JobDurationSketch.Key key = new JobDurationSketch.Key(typeKey(jobType), finishedAt.truncatedTo(WINDOW));
+        Window window = windows.computeIfAbsent(key, k -> new Window());
+        synchronized (window) {
+            window.histogram.recordValue(Math.min(millis, MAX_TRACKABLE_MILLIS));
+            window.changes++;
+        }
+    }
+
+    /**
+     * Merges the windows of a range into duration percentiles per jobType
+     * @param from start of the range (rounded down to the hour)
+     * @param to end of the range, exclusive
+     * @param jobType optional, only this jobType
+     * @return one row per jobType that finished jobs in the range, ordered by jobType
+     * @throws InvalidJobException if the range is empty or spans more than MAX_WINDOWS windows
+     */
+    public List<JobDurationStats> findDurations(LocalDateTime from, LocalDateTime to, String jobType) {
+        LocalDateTime start = from.truncatedTo(WINDOW);
+        if (!start.isBefore(to)) {
+            throw new InvalidJobException(JobError.ILLEGAL_RANGE);
+        }
+        if (WINDOW.between(start, to) > MAX_WINDOWS) {
+            throw new InvalidJobException(JobError.RANGE_TOO_LARGE);
+        }
+        String type = jobType != null ? typeKey(jobType) : null;
+        Map<String, Histogram> merged = new TreeMap<>();
+        windows.forEach((key, window) -> {
+            if (inRange(key, start, to, type)) {
+                synchronized (window) {
+                    merged.computeIfAbsent(key.getJobType(), t -> newHistogram()).add(window.histogram);
+                }
+            }
+        });
+        if (start.isBefore(memoryHorizon(LocalDateTime.now()))) {
+            for (JobDurationSketch row : sketchRepository.findWindows(start, to, type)) {
+                if (!windows.containsKey(new JobDurationSketch.Key(row.getJobType(), row.getWindowStart()))) {
+                    merged.computeIfAbsent(row.getJobType(), t -> newHistogram()).add(decode(row.getHistogram()));
+                }
+            }
+        }
+        List<JobDurationStats> stats = new ArrayList<>(merged.size());
+        merged.forEach((key, histogram) -> stats.add(new JobDurationStats(key, histogram.getTotalCount(),
+                histogram.getValueAtPercentile(50), histogram.getValueAtPercentile(90),
+                histogram.getValueAtPercentile(99), histogram.getMaxValue())));
+        return stats;
+    }
+
+    /**
+     * Writes the windows that changed since the last time, and drops the ones older than the memory retention
+     */
+    @Scheduled(fixedDelayString = "${jobs.durations.persist-interval-ms:60000}",
+            initialDelayString = "${jobs.durations.persist-interval-ms:60000}")
+    @PreDestroy
+    public void persist() {
+        LocalDateTime now = LocalDateTime.now();
+        List<JobDurationSketch> rows = new ArrayList<>();
+        Map<Window, Long> saved = new HashMap<>();
+        windows.forEach((key, window) -> {
+            synchronized (window) {
+                if (window.changes != window.persistedChanges) {
+                    rows.add(new JobDurationSketch(key.getJobType(), key.getWindowStart(), encode(window.histogram), now));
+                    saved.put(window, window.changes);
+                }
+            }
+        });
+        if (!rows.isEmpty()) {
+            sketchRepository.saveAll(rows);
+            logger.debug("Saved {} job duration windows", rows.size());
+        }
+        saved.forEach((window, changes) -> {
+            synchronized (window) {
+                window.persistedChanges = changes;
+            }
+        });
+        LocalDateTime horizon = memoryHorizon(now);
+        windows.entrySet().removeIf(entry -> entry.getKey().getWindowStart().isBefore(horizon) && isPersisted(entry.getValue()));
+    }
+
+    /**
+     * Loads the windows of the memory retention, merging them into anything recorded before the application was ready
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        LocalDateTime now = LocalDateTime.now();
+        List<JobDurationSketch> rows = sketchRepository.findWindows(memoryHorizon(now), now.plus(1, WINDOW), null);
+        for (JobDurationSketch row : rows) {
+            IntCountsHistogram histogram = decode(row.getHistogram());
+            Window window = windows.computeIfAbsent(new JobDurationSketch.Key(row.getJobType(), row.getWindowStart()), k -> new Window());
+            synchronized (window) {
+                window.histogram.add(histogram);
+            }
+        }
+        logger.info("Loaded {} job duration windows", rows.size());
+    }
+
+    private LocalDateTime memoryHorizon(LocalDateTime now) {
+        return now.minus(memoryRetention).truncatedTo(WINDOW);
+    }
+
+    private static boolean inRange(JobDurationSketch.Key key, LocalDateTime start, LocalDateTime to, String jobType) {
+        return !key.getWindowStart().isBefore(start) && key.getWindowStart().isBefore(to)
+                && (jobType == null || jobType.equals(key.getJobType()));
+    }
+
+    private static boolean isPersisted(Window window) {
+        synchronized (window) {
+            return window.changes == window.persistedChanges;
+        }
+    }
+
+    //for merging windows, a merge of many hours could overflow int counts
+    private static Histogram newHistogram() {
+        return new Histogram(MAX_TRACKABLE_MILLIS, SIGNIFICANT_DIGITS);
+    }
+
+    static IntCountsHistogram newWindowHistogram() {
+        return new IntCountsHistogram(MAX_TRACKABLE_MILLIS, SIGNIFICANT_DIGITS);
+    }
+
+    private static byte[] encode(IntCountsHistogram histogram) {
+        ByteBuffer buffer = ByteBuffer.allocate(histogram.getNeededByteBufferCapacity());
+        int length = histogram.encodeIntoCompressedByteBuffer(buffer);
+        return Arrays.copyOf(buffer.array(), length);
+    }
+
+    private static IntCountsHistogram decode(byte[] bytes) {
+        try {
+            return IntCountsHistogram.decodeFromCompressedByteBuffer(ByteBuffer.wrap(bytes), MAX_TRACKABLE_MILLIS);
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupt job duration histogram", e);
+        }
+    }
+
+    private static String typeKey(String jobType) {
+        return jobType != null ? jobType : "";
+    }
+}
@@ -0,0 +1,16 @@
+package ac.il.hit.final_project;
+
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import lombok.Value;
+
+//duration percentiles of the jobs of one jobType, all durations are in milliseconds
+@Value
+@JsonPropertyOrder({"jobType", "count", "p50", "p90", "p99", "max"})
+public class JobDurationStats {
+    String jobType;
+    long count;
+    long p50;
+    long p90;
+    long p99;
+    long max;
+}
@@ -0,0 +1,58 @@
+package ac.il.hit.final_project;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+
+import java.nio.charset.StandardCharsets;
+
+/*
+ * the expected failures of the jobs api, each with its response prepared once:
+ * the json body is encoded when the class loads, JobErrorHandler sends the same bytes every time.
+ * bad requests and lookups of missing jobs are a big part of the traffic during retry storms,
+ * so the error path shouldn't cost more than the successful one.
+ */
+public enum JobError {
+    JOB_NOT_FOUND(HttpStatus.NOT_FOUND, "Job not found"),
+    ILLEGAL_STATUS(HttpStatus.BAD_REQUEST, "Illegal status"),
+    WRONG_PASSWORD(HttpStatus.BAD_REQUEST, "Wrong password"),
+    MISSING_PASSWORD(HttpStatus.BAD_REQUEST, "Missing password"),
+    ILLEGAL_LIMIT(HttpStatus.BAD_REQUEST, "Illegal limit"),
+    ILLEGAL_IDS(HttpStatus.BAD_REQUEST, "Illegal ids, pass 1 to 1000 job ids"),
+    ILLEGAL_SORT(HttpStatus.BAD_REQUEST, "Illegal sort"),
+    ILLEGAL_RANGE(HttpStatus.BAD_REQUEST, "Illegal range"),
+    RANGE_TOO_LARGE(HttpStatus.BAD_REQUEST, "Range too large for the resolution"),
+    ILLEGAL_RESOLUTION(HttpStatus.BAD_REQUEST, "Illegal resolution, minute or hour"),
+    ILLEGAL_FORMAT(HttpStatus.BAD_REQUEST, "Illegal format, columnar or ndjson"),
+    MISSING_WORKER_ID(HttpStatus.BAD_REQUEST, "Missing workerId"),
+    ILLEGAL_LEASE_SECONDS(HttpStatus.BAD_REQUEST, "Illegal leaseSeconds, 1 to 3600"),
+    LEASE_NOT_HELD(HttpStatus.CONFLICT, "Lease not held"),
+    CONCURRENT_UPDATE(HttpStatus.CONFLICT, "Job was changed concurrently"),
+    WATERMARK_TOO_OLD(HttpStatus.GONE, "Watermark too old, reload all jobs with GET /jobs");
+
+    private final HttpStatus status;
+    private final String reason;
+    private final ResponseEntity<byte[]> response;
+
+    JobError(HttpStatus status, String reason) {
+        this.status = status;
+        this.reason = reason;
+        //the reasons are constants without characters that need escaping
+        byte[] body = ("{\"status\":" + status.value() + ",\"error\":\"" + status.getReasonPhrase()
+                + "\",\"message\":\"" + reason + "\"}").getBytes(StandardCharsets.UTF_8);
+        this.response = ResponseEntity.status(status).contentType(MediaType.APPLICATION_JSON).body(body);
+    }
+
+    public HttpStatus status() {
+        return status;
+    }
+
+    public String reason() {
+        return reason;
+    }
+
+    //the prepared response, shared between requests and never modified
+    public ResponseEntity<byte[]> response() {
+        return response;
+    }
+}
@@ -0,0 +1,25 @@
+package ac.il.hit.final_project;
+
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+/*
+ * maps the expected failures of the controllers to their prepared responses (see JobError).
+ * nothing is serialized or logged here, the body bytes are written as they are.
+ */
+@RestControllerAdvice
+public class JobErrorHandler {
+
+    @ExceptionHandler(JobApiException.class)
+    public ResponseEntity<byte[]> handleJobApiException(JobApiException e) {
+        return e.getError().response();
+    }
+
+    //a write based on an old copy of the job (see Job.version)
+    @ExceptionHandler(OptimisticLockingFailureException.class)
+    public ResponseEntity<byte[]> handleConcurrentUpdate(OptimisticLockingFailureException e) {
+        return JobError.CONCURRENT_UPDATE.response();
+    }
+}
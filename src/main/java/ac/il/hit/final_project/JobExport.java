@@ -0,0 +1,187 @@
+package ac.il.hit.final_project;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/*
+ * export of the whole app_job table for analytics (GET /jobs/export and a scheduled dump to files).
+ * the rows come from a streaming cursor (JobRepository.streamExportRows) and go straight to the output,
+ * so neither the table nor the output is ever held in memory.
+ * COLUMNAR - JCOL (see JobColumnarWriter): row groups, dictionary encoded status and jobType, delta encoded ids and times
+ * NDJSON   - one json object per line, for tools that want text
+ * JobExportBenchmarkTest compares their size and generation time with GET /jobs.
+ */
+@Service
+public class JobExport {
+
+    private static final Logger logger = LoggerFactory.getLogger(JobExport.class);
+
+    private static final DateTimeFormatter FILE_TIME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+    private static final String FILE_PREFIX = "jobs-";
+
+    public enum Format {
+        COLUMNAR("application/vnd.jobs.columnar", ".jcol"),
+        NDJSON("application/x-ndjson", ".ndjson");
+
+        private final String contentType;
+        private final String fileExtension;
+
+        Format(String contentType, String fileExtension) {
+            this.contentType = contentType;
+            this.fileExtension = fileExtension;
+        }
+
+        public String contentType() {
+            return contentType;
+        }
+
+        public String fileExtension() {
+            return fileExtension;
+        }
+
+        //the format parameter of GET /jobs/export, case insensitive
+        public static Format of(String name) {
+            for (Format format : values()) {
+                if (format.name().equalsIgnoreCase(name)) {
+                    return format;
+                }
+            }
+            throw new InvalidJobException(JobError.ILLEGAL_FORMAT);
+        }
+    }
+
+    private final JobRepository jobRepository;
+    private final ObjectMapper objectMapper;
+    private final int rowGroupSize;
+    private final Path dumpDirectory;
+    private final Format dumpFormat;
+    private final int dumpsKept;
+
+    public JobExport(JobRepository jobRepository, ObjectMapper objectMapper,
+                     @Value("${jobs.export.row-group-size:8192}") int rowGroupSize,
+                     @Value("${jobs.export.dump-directory:${java.io.tmpdir}/jobs-export}") Path dumpDirectory,
+                     @Value("${jobs.export.dump-format:COLUMNAR}") Format dumpFormat,
+                     @Value("${jobs.export.dumps-kept:3}") int dumpsKept) {
+        this.jobRepository = jobRepository;
+        this.objectMapper = objectMapper;
+        this.rowGroupSize = rowGroupSize;
+        this.dumpDirectory = dumpDirectory;
+        this.dumpFormat = dumpFormat;
+        this.dumpsKept = dumpsKept;
+    }
+
+    /**
+     * Writes every job to out, in id order
+     * @param format the output format
+     * @param out where to write, it is flushed but not closed
+     * @return number of jobs written
+     */
+    @Transactional(readOnly = true)
+    public long export(Format format, OutputStream out) throws IOException {
+        OutputStream buffered = new BufferedOutputStream(out, 64 * 1024);
+        try (Stream<JobExportRow> rows = jobRepository.streamExportRows()) {
+            long written = format == Format.COLUMNAR ? writeColumnar(rows.iterator(), buffered) : writeNdjson(rows.iterator(), buffered);
+            buffered.flush();
+            return written;
+        }
+    }
+
+    private long writeColumnar(Iterator<JobExportRow> rows, OutputStream out) throws IOException {
+        JobColumnarWriter writer = new JobColumnarWriter(out, rowGroupSize);
+        while (rows.hasNext()) {
+            writer.write(rows.next());
+        }
+        return writer.finish();
+    }
+
+    private long writeNdjson(Iterator<JobExportRow> rows, OutputStream out) throws IOException {
+        long written = 0;
+        try (SequenceWriter writer = objectMapper.writer()
+                .without(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+                .withRootValueSeparator("\n")
+                .writeValues(out)) {
+            while (rows.hasNext()) {
+                writer.write(rows.next());
+                written++;
+            }
+        }
+        if (written > 0) {
+            out.write('\n');
+        }
+        return written;
+    }
+
+    @Scheduled(fixedDelayString = "${jobs.export.dump-interval-ms:86400000}",
+            initialDelayString = "${jobs.export.dump-interval-ms:86400000}")
+    @Transactional(readOnly = true)
+    public void dump() {
+        try {
+            dump(dumpDirectory, LocalDateTime.now());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Exports all jobs into a new file of the directory, and deletes the oldest dumps beyond the ones kept.
+     * the file is written under a temporary name and renamed when complete, a reader never sees half a dump
+     * @param directory where the dumps are
+     * @param now time in the file name
+     * @return the new dump
+     */
+    //the transaction keeps the cursor open, export() is called on this and not through the proxy
+    @Transactional(readOnly = true)
+    public Path dump(Path directory, LocalDateTime now) throws IOException {
+        Files.createDirectories(directory);
+        Path file = directory.resolve(FILE_PREFIX + FILE_TIME.format(now) + dumpFormat.fileExtension());
+        Path partial = directory.resolve(file.getFileName() + ".partial");
+        long start = System.nanoTime();
+        long rows;
+        try (OutputStream out = Files.newOutputStream(partial)) {
+            rows = export(dumpFormat, out);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(partial);
+            throw e;
+        }
+        Files.move(partial, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        logger.info("Exported {} jobs to {} ({} bytes) in {} ms",
+                rows, file, Files.size(file), (System.nanoTime() - start) / 1_000_000);
+        deleteOldDumps(directory);
+        return file;
+    }
+
+    private void deleteOldDumps(Path directory) throws IOException {
+        List<Path> dumps;
+        try (Stream<Path> files = Files.list(directory)) {
+            //the time in the name sorts like the time itself
+            dumps = files.filter(path -> path.getFileName().toString().startsWith(FILE_PREFIX)
+                            && path.getFileName().toString().endsWith(dumpFormat.fileExtension()))
+                    .sorted(Comparator.comparing((Path path) -> path.getFileName().toString()).reversed())
+                    .toList();
+        }
+        for (Path old : dumps.subList(Math.min(dumpsKept, dumps.size()), dumps.size())) {
+            Files.deleteIfExists(old);
+        }
+    }
+}
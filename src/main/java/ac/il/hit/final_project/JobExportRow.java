@@ -0,0 +1,22 @@
+package ac.il.hit.final_project;
+
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import lombok.Value;
+
+import java.time.LocalDateTime;
+
+/*
+ * one job as the export sees it (GET /jobs/export and the scheduled dump, see JobExport).
+ * read by a constructor expression instead of loading entities, so a streamed export of the whole table
+ * doesn't fill the persistence context. the password and the lease fields are not exported.
+ */
+@Value
+@JsonPropertyOrder({"id", "jobName", "status", "jobType", "createdAt", "updatedAt"})
+public class JobExportRow {
+    Long id;
+    String jobName;
+    Integer status;
+    String jobType;
+    LocalDateTime createdAt;
+    LocalDateTime updatedAt;
+}
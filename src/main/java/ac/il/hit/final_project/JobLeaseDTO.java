@@ -0,0 +1,29 @@
+package ac.il.hit.final_project;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import lombok.Value;
+
+import java.time.LocalDateTime;
+
+//a job together with the lease a worker holds on it
+@Value
+@JsonPropertyOrder({"jobId", "jobName", "status", "jobType", "leaseOwner", "leaseExpiresAt"})
+public class JobLeaseDTO {
+    @JsonIgnore
+    private final Job job;
+
+    public JobLeaseDTO(Job job) {
+        if (job == null) {
+            throw new IllegalArgumentException("Job cannot be null");
+        }
+        this.job = job;
+    }
+
+    public Long getJobId() { return job.getId(); }
+    public String getJobName() { return job.getJobName(); }
+    public Integer getStatus() { return job.getStatus(); }
+    public String getJobType() { return job.getJobType(); }
+    public String getLeaseOwner() { return job.getLeaseOwner(); }
+    public LocalDateTime getLeaseExpiresAt() { return job.getLeaseExpiresAt(); }
+}
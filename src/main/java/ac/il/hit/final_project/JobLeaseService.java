@@ -0,0 +1,191 @@
+package ac.il.hit.final_project;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * lease based claiming of jobs by build workers.
+ * instead of polling /jobs/status/{status} and racing on PUT /jobs/status/{id}, a worker claims jobs:
+ * it reads the ids of matching jobs and takes them with one conditional UPDATE (see JobRowUpdater) that only
+ * matches the ones still free, so concurrent workers get disjoint sets of jobs, each with a lease owner + expiry.
+ * (H2 has no SKIP LOCKED, a plain FOR UPDATE makes workers queue behind each other for the same rows)
+ * the worker renews the lease while it works and releases it when done. if it dies, the reaper
+ * gives the job back (original status, no owner) once the lease expired.
+ * Job.version protects against anything that still writes the row based on an old copy.
+ */
+@Service
+public class JobLeaseService {
+
+    private static final Logger logger = LoggerFactory.getLogger(JobLeaseService.class);
+
+    static final int MAX_CLAIM = 100;
+    static final int MAX_LEASE_SECONDS = 3600;
+
+    private final JobRepository jobRepository;
+    private final JobRowUpdater rowUpdater;
+    private final ApplicationEventPublisher eventPublisher;
+    private final int reaperBatchSize;
+
+    public JobLeaseService(JobRepository jobRepository, JobRowUpdater rowUpdater, ApplicationEventPublisher eventPublisher,
+                           @Value("${jobs.lease.reaper-batch-size:100}") int reaperBatchSize) {
+        this.jobRepository = jobRepository;
+        this.rowUpdater = rowUpdater;
+        this.eventPublisher = eventPublisher;
+        this.reaperBatchSize = reaperBatchSize;
+    }
+
+    /**
+     * Atomically claims up to limit jobs of a status (and optionally a job type) for a worker
+     * @param request who claims what, see ClaimRequest
+     * @return the claimed jobs, may be fewer than requested (or none)
+     * @throws InvalidJobException if the request is illegal
+     */
+    @Transactional
+    public List<Job> claimJobs(ClaimRequest request) {
+        requireWorker(request.getWorkerId());
+        if (!JobService.isLegalStatus(request.getStatus())
+                || (request.getClaimedStatus() != null && !JobService.isLegalStatus(request.getClaimedStatus()))) {
+            throw new InvalidJobException(JobError.ILLEGAL_STATUS);
+        }
+        if (request.getLimit() < 1 || request.getLimit() > MAX_CLAIM) {
+            throw new InvalidJobException(JobError.ILLEGAL_LIMIT);
+        }
+        requireLeaseSeconds(request.getLeaseSeconds());
+
+        LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.MICROS);
+        LocalDateTime expiresAt = now.plusSeconds(request.getLeaseSeconds());
+        Integer claimedStatus = request.getClaimedStatus() != null ? request.getClaimedStatus() : request.getStatus();
+        //some candidates may be taken by other workers before this one gets to them, read a few more
+        List<Long> candidates = jobRepository.findClaimableIds(request.getStatus(), request.getJobType(), now,
+                PageRequest.of(0, request.getLimit() * 2));
+        if (candidates.isEmpty()) {
+            return List.of();
+        }
+        //one statement for all of them, the jobs it returns are the ones this worker got
+        List<Object> condition = new ArrayList<>(candidates);
+        condition.add(request.getStatus());
+        condition.add(now);
+        condition.add(request.getLimit());
+        List<Job> claimed = rowUpdater.update("leased_from_status = status, status = ?, lease_owner = ?, lease_expires_at = ?",
+                List.of(claimedStatus, request.getWorkerId(), expiresAt), now,
+                "id IN (" + JobRowUpdater.placeholders(candidates.size()) + ") AND status = ?"
+                        + " AND (lease_expires_at IS NULL OR lease_expires_at < ?) FETCH FIRST ? ROWS ONLY", condition);
+        for (Job job : claimed) {
+            JobSnapshot before = JobSnapshot.of(job);
+            job.setLeasedFromStatus(job.getStatus());
+            job.setStatus(claimedStatus);
+            job.setLeaseOwner(request.getWorkerId());
+            job.setLeaseExpiresAt(expiresAt);
+            job.setVersion(job.getVersion() != null ? job.getVersion() + 1 : null);
+            job.setUpdatedAt(now);
+            eventPublisher.publishEvent(JobChangedEvent.updated(before, job));
+        }
+        return claimed;
+    }
+
+    /**
+     * Extends the lease of a job held by a worker
+     * @param id the job
+     * @param request worker id and new lease length
+     * @return the job with its new lease expiry
+     * @throws LeaseNotHeldException if the worker doesn't hold the lease (anymore)
+     */
+    @Transactional
+    public Job renewLease(Long id, LeaseRequest request) {
+        requireWorker(request.getWorkerId());
+        requireLeaseSeconds(request.getLeaseSeconds());
+        Job job = lockHeldLease(id, request.getWorkerId());
+        job.setLeaseExpiresAt(LocalDateTime.now().plusSeconds(request.getLeaseSeconds()));
+        return job;
+    }
+
+    /**
+     * Gives up the lease of a job, optionally setting its final status
+     * @param id the job
+     * @param request worker id and optional new status
+     * @return the released job
+     * @throws LeaseNotHeldException if the worker doesn't hold the lease (anymore)
+     */
+    @Transactional
+    public Job releaseLease(Long id, LeaseRequest request) {
+        requireWorker(request.getWorkerId());
+        if (request.getStatus() != null && !JobService.isLegalStatus(request.getStatus())) {
+            throw new InvalidJobException(JobError.ILLEGAL_STATUS);
+        }
+        Job job = lockHeldLease(id, request.getWorkerId());
+        JobSnapshot before = JobSnapshot.of(job);
+        job.setStatus(request.getStatus() != null ? request.getStatus() : job.getLeasedFromStatus());
+        clearLease(job);
+        eventPublisher.publishEvent(JobChangedEvent.updated(before, job));
+        return job;
+    }
+
+    @Scheduled(fixedDelayString = "${jobs.lease.reaper-interval-ms:10000}")
+    @Transactional
+    public void reapExpiredLeases() {
+        int reaped = reapExpiredLeases(LocalDateTime.now());
+        if (reaped > 0) {
+            logger.info("Returned {} jobs with expired leases", reaped);
+        }
+    }
+
+    /**
+     * Returns jobs whose lease expired before the given time to the status they had when claimed
+     * @param now leases that expired before this are reaped
+     * @return number of jobs returned (at most one batch)
+     */
+    @Transactional
+    public int reapExpiredLeases(LocalDateTime now) {
+        LocalDateTime updatedAt = LocalDateTime.now().truncatedTo(ChronoUnit.MICROS);
+        //one statement, a lease renewed or released meanwhile doesn't match anymore
+        List<Job> reaped = rowUpdater.update(
+                "status = leased_from_status, lease_owner = NULL, lease_expires_at = NULL, leased_from_status = NULL",
+                List.of(), updatedAt, "lease_expires_at < ? FETCH FIRST ? ROWS ONLY", List.of(now, reaperBatchSize));
+        for (Job job : reaped) {
+            JobSnapshot before = JobSnapshot.of(job);
+            job.setStatus(job.getLeasedFromStatus());
+            clearLease(job);
+            job.setVersion(job.getVersion() != null ? job.getVersion() + 1 : null);
+            job.setUpdatedAt(updatedAt);
+            eventPublisher.publishEvent(JobChangedEvent.updated(before, job));
+        }
+        return reaped.size();
+    }
+
+    private Job lockHeldLease(Long id, String workerId) {
+        Job job = jobRepository.findLockedById(id).orElseThrow(JobNotFoundException::new);
+        if (!workerId.equals(job.getLeaseOwner())) {
+            throw new LeaseNotHeldException();
+        }
+        return job;
+    }
+
+    private static void clearLease(Job job) {
+        job.setLeaseOwner(null);
+        job.setLeaseExpiresAt(null);
+        job.setLeasedFromStatus(null);
+    }
+
+    private static void requireWorker(String workerId) {
+        if (workerId == null || workerId.isBlank()) {
+            throw new InvalidJobException(JobError.MISSING_WORKER_ID);
+        }
+    }
+
+    private static void requireLeaseSeconds(int leaseSeconds) {
+        if (leaseSeconds < 1 || leaseSeconds > MAX_LEASE_SECONDS) {
+            throw new InvalidJobException(JobError.ILLEGAL_LEASE_SECONDS);
+        }
+    }
+}
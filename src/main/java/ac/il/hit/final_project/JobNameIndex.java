@@ -0,0 +1,281 @@
+package ac.il.hit.final_project;
+
+import org.roaringbitmap.IntIterator;
+import org.roaringbitmap.RoaringBitmap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory trigram inverted index over Job.jobName.
+ * Every lower cased name is cut into its 3 character substrings ("build-42" -> "bui", "uil", "ild", ...),
+ * and every trigram points to the set of job ids whose name contains it.
+ * A substring query only has to intersect the id sets of its own trigrams and check the few candidates left,
+ * instead of scanning every name like LIKE '%x%' does.
+ * The index is built once the application is ready and kept up to date from the JobChangedEvents of JobService.
+ * Writes that come in while a rebuild reads the table are applied and also kept aside, and replayed on top of
+ * what the rebuild read: the read may have missed them, and the rebuild must not wipe them out.
+ * Results are ranked: prefix matches first, then earlier matches, then shorter names, then newer jobs.
+ */
+@Component
+public class JobNameIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(JobNameIndex.class);
+
+    private static final int GRAM = 3;
+
+    private final JobRepository jobRepository;
+
+    //guards both maps, searches take the read lock, writes the write lock
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, RoaringBitmap> postings = new HashMap<>();
+    private final Map<Integer, String> names = new HashMap<>();
+    //writes since the running rebuild started, null while none is running. guarded by the lock too
+    private List<NameChange> changesDuringRebuild;
+
+    public JobNameIndex(JobRepository jobRepository) {
+        this.jobRepository = jobRepository;
+    }
+
+    /**
+     * (Re)builds the whole index from the database
+     * runs first on startup, jobs written after it (e.g. by DatabaseSeeder) are added by onJobChanged
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public synchronized void rebuild() {
+        long start = System.nanoTime();
+        lock.writeLock().lock();
+        try {
+            changesDuringRebuild = new ArrayList<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        //searches and writes go on while the table is read
+        List<JobRepository.JobNameView> rows = null;
+        try {
+            rows = jobRepository.findAllNames();
+        } finally {
+            lock.writeLock().lock();
+            try {
+                if (rows != null) {
+                    postings.clear();
+                    names.clear();
+                    for (JobRepository.JobNameView row : rows) {
+                        add(row.getId(), row.getJobName());
+                    }
+                    //the rows may be older than these, replay them in the order they happened
+                    //(a put of a name the rows already had is harmless)
+                    for (NameChange change : changesDuringRebuild) {
+                        removeLocked(change.id());
+                        add(change.id(), change.jobName());
+                    }
+                }
+                changesDuringRebuild = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+        logger.info("Indexed {} job names ({} trigrams) in {} ms",
+                names.size(), postings.size(), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onJobChanged(JobChangedEvent event) {
+        if (event.getKind() == JobChangedEvent.Kind.DELETED) {
+            remove(event.getJobId());
+        } else {
+            put(event.getJobId(), event.getAfter().getJobName());
+        }
+    }
+
+    public void put(Long id, String jobName) {
+        lock.writeLock().lock();
+        try {
+            removeLocked(id);
+            add(id, jobName);
+            if (changesDuringRebuild != null) {
+                changesDuringRebuild.add(new NameChange(id, jobName));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(Long id) {
+        lock.writeLock().lock();
+        try {
+            removeLocked(id);
+            if (changesDuringRebuild != null) {
+                changesDuringRebuild.add(new NameChange(id, null));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the jobs whose name contains the query (case insensitive)
+     * @param query the name fragment
+     * @param limit max number of ids to return
+     * @return ids of matching jobs, best match first
+     */
+    public List<Long> search(String query, int limit) {
+        String needle = normalize(query);
+        if (needle.isEmpty() || limit <= 0) {
+            return List.of();
+        }
+        Comparator<Match> ranking = Comparator.comparingInt(Match::position)
+                .thenComparingInt(Match::length)
+                .thenComparing(Comparator.comparingInt(Match::id).reversed());
+        //keeps the worst of the best "limit" matches on top, so it can be replaced cheaply
+        PriorityQueue<Match> best = new PriorityQueue<>(limit + 1, ranking.reversed());
+
+        lock.readLock().lock();
+        try {
+            if (needle.length() < GRAM) {
+                //too short for a trigram, only a scan can answer it
+                names.forEach((id, name) -> offer(best, limit, ranking, id, name, needle));
+            } else {
+                RoaringBitmap candidates = candidates(needle);
+                if (candidates != null) {
+                    IntIterator ids = candidates.getIntIterator();
+                    while (ids.hasNext()) {
+                        int id = ids.next();
+                        offer(best, limit, ranking, id, names.get(id), needle);
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        List<Match> sorted = new ArrayList<>(best);
+        sorted.sort(ranking);
+        List<Long> result = new ArrayList<>(sorted.size());
+        for (Match match : sorted) {
+            result.add((long) match.id());
+        }
+        return result;
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return names.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    //intersection of the posting lists of all trigrams of the query, smallest first; null if nothing can match
+    private RoaringBitmap candidates(String needle) {
+        List<RoaringBitmap> lists = new ArrayList<>();
+        for (String gram : trigrams(needle)) {
+            RoaringBitmap posting = postings.get(gram);
+            if (posting == null) {
+                return null;
+            }
+            lists.add(posting);
+        }
+        lists.sort(Comparator.comparingLong(RoaringBitmap::getLongCardinality));
+        RoaringBitmap result = lists.get(0).clone();
+        for (int i = 1; i < lists.size() && !result.isEmpty(); i++) {
+            result.and(lists.get(i));
+        }
+        return result;
+    }
+
+    //trigrams only say a name *may* contain the query, the name itself is checked here
+    private static void offer(PriorityQueue<Match> best, int limit, Comparator<Match> ranking,
+                              int id, String name, String needle) {
+        if (name == null) {
+            return;
+        }
+        int position = name.indexOf(needle);
+        if (position < 0) {
+            return;
+        }
+        Match match = new Match(id, position, name.length());
+        if (best.size() < limit) {
+            best.add(match);
+        } else if (ranking.compare(match, best.peek()) < 0) {
+            best.poll();
+            best.add(match);
+        }
+    }
+
+    //must hold the write lock
+    private void add(Long id, String jobName) {
+        if (jobName == null || id == null) {
+            return;
+        }
+        if (id > Integer.MAX_VALUE || id < 0) {
+            logger.warn("Job id {} is out of range for the name index, not indexed", id);
+            return;
+        }
+        int key = id.intValue();
+        String name = normalize(jobName);
+        names.put(key, name);
+        for (String gram : trigrams(name)) {
+            postings.computeIfAbsent(gram, g -> new RoaringBitmap()).add(key);
+        }
+    }
+
+    //must hold the write lock
+    private void removeLocked(Long id) {
+        if (id == null || id > Integer.MAX_VALUE || id < 0) {
+            return;
+        }
+        int key = id.intValue();
+        String name = names.remove(key);
+        if (name == null) {
+            return;
+        }
+        for (String gram : trigrams(name)) {
+            RoaringBitmap posting = postings.get(gram);
+            if (posting != null) {
+                posting.remove(key);
+                if (posting.isEmpty()) {
+                    postings.remove(gram);
+                }
+            }
+        }
+    }
+
+    private static String normalize(String text) {
+        return text == null ? "" : text.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static Set<String> trigrams(String text) {
+        Set<String> grams = new LinkedHashSet<>();
+        for (int i = 0; i + GRAM <= text.length(); i++) {
+            grams.add(text.substring(i, i + GRAM));
+        }
+        return grams;
+    }
+
+    private record Match(int id, int position, int length) {
+    }
+
+    //a put, or a remove when jobName is null
+    private record NameChange(Long id, String jobName) {
+    }
+}
@@ -0,0 +1,9 @@
+package ac.il.hit.final_project;
+
+//thrown when the job of a request doesn't exist (404)
+public class JobNotFoundException extends JobApiException {
+
+    public JobNotFoundException() {
+        super(JobError.JOB_NOT_FOUND);
+    }
+}
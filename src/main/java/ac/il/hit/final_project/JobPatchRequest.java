@@ -0,0 +1,28 @@
+package ac.il.hit.final_project;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/*
+ * body of PATCH /jobs/{id}, only the fields that are sent are changed.
+ * a missing (or null) field keeps its value, so a client that only renames a job sends just {"jobName": "..."}
+ * jobName - new name
+ * jobType - new job type
+ * status  - new status (100..999)
+ * the password has its own endpoint (PUT /jobs/{id}/password), it needs the old one
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+public class JobPatchRequest {
+    private String jobName;
+    private String jobType;
+    private Integer status;
+
+    public JobPatchRequest(String jobName, String jobType, Integer status) {
+        this.jobName = jobName;
+        this.jobType = jobType;
+        this.status = status;
+    }
+}
@@ -0,0 +1,35 @@
+package ac.il.hit.final_project;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.format.annotation.DateTimeFormat;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/*
+ * the query string of GET /jobs/query, every criterion is optional and they are combined with AND:
+ *   status=500,404          any of these statuses
+ *   jobType=error,regular   any of these job types
+ *   createdFrom / createdTo, updatedFrom / updatedTo   ISO date-times, both ends inclusive
+ *   sort=createdAt,desc     field and direction (id, jobName, status, jobType, createdAt, updatedAt)
+ *   limit=100               1..1000
+ */
+@Getter
+@Setter
+public class JobQuery {
+    private List<Integer> status;
+    private List<String> jobType;
+
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+    private LocalDateTime createdFrom;
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+    private LocalDateTime createdTo;
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+    private LocalDateTime updatedFrom;
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+    private LocalDateTime updatedTo;
+
+    private String sort = "createdAt,desc";
+    private int limit = 100;
+}
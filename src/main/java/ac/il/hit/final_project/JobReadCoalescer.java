@@ -0,0 +1,70 @@
+package ac.il.hit.final_project;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.Value;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/*
+ * request coalescing for the read functions of JobService.
+ * when hundreds of dashboards ask for the same job at the same moment only one query runs,
+ * the rest share its result. after a write commits, running reads are forgotten so callers
+ * that come later never get data from before the write.
+ * the loaded entities belong to the session of the thread that loaded them, so what is shared is a detached
+ * copy of the result and every caller gets its own copy of that. a read inside a transaction is never shared,
+ * it must see the transaction's own writes and gets managed entities like any repository call.
+ */
+@Component
+public class JobReadCoalescer implements MeterBinder {
+
+    //order of onJobChanged among the after-commit listeners, before JobResponseCache.INVALIDATE_ORDER
+    static final int FORGET_ORDER = 0;
+
+    private final SingleFlight<ReadKey> singleFlight = new SingleFlight<>();
+
+    /**
+     * Runs a read, or joins an identical one that is already running
+     * @param method name of the JobService read function
+     * @param argument its argument (null for none)
+     * @param loader the repository call
+     * @param detach copies a result into objects no session knows about
+     * @return the result of the loader inside a transaction, otherwise a detached copy of the (possibly shared) result
+     */
+    public <V> V execute(String method, Object argument, Supplier<V> loader, UnaryOperator<V> detach) {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            return loader.get();
+        }
+        V shared = singleFlight.execute(new ReadKey(method, argument), () -> detach.apply(loader.get()));
+        return detach.apply(shared);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    @Order(FORGET_ORDER)
+    public void onJobChanged(JobChangedEvent event) {
+        singleFlight.forgetAll();
+    }
+
+    //jobs.reads.executed / jobs.reads.coalesced
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("jobs.reads.executed", singleFlight, SingleFlight::getExecuted)
+                .description("reads that ran their own query")
+                .register(registry);
+        FunctionCounter.builder("jobs.reads.coalesced", singleFlight, SingleFlight::getCoalesced)
+                .description("reads that shared the query of an identical concurrent read")
+                .register(registry);
+    }
+
+    @Value
+    private static class ReadKey {
+        String method;
+        Object argument;
+    }
+}
@@ -1,21 +1,47 @@
 package ac.il.hit.final_project;
 
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Lock;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
 /* the layer conecting to the db
  * extendes JpaRepository that comunicates with hibernet
  * the code is written in java and automaticliy translated into sql querry by the JPA
  */
-public interface JobRepository extends JpaRepository<Job,Long> {
+/*
+ * the finder queries below are cacheable: hibernate keeps their results (the ids) in the "job-queries" region
+ * and the jobs themselves in the "job" region. a result is thrown away automatically once app_job is written to
+ * after it was cached, this includes JPQL bulk update/delete queries, which also evict every cached job.
+ * the frequent single statement updates (PATCH, claiming, reaping) go through JobRowUpdater instead,
+ * it evicts only the jobs it updated and the cached query results.
+ */
+public interface JobRepository extends JpaRepository<Job,Long>, JpaSpecificationExecutor<Job> {
+
+    //find all jobs
+    @Override
+    @QueryHints({@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"),
+            @QueryHint(name = HibernateHints.HINT_CACHE_REGION, value = Job.QUERY_CACHE_REGION)})
+    List<Job> findAll();
 
     //find jobs by status
+    @QueryHints({@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"),
+            @QueryHint(name = HibernateHints.HINT_CACHE_REGION, value = Job.QUERY_CACHE_REGION)})
     List<Job> findByStatus(Integer status);
 
     //find jobs by jobType
+    @QueryHints({@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"),
+            @QueryHint(name = HibernateHints.HINT_CACHE_REGION, value = Job.QUERY_CACHE_REGION)})
     List<Job> findByJobType(String jobType);
 
     /*explention for find jobs by date rang:
@@ -25,7 +51,44 @@ public interface JobRepository extends JpaRepository<Job,Long> {
      *@Param: annotations map the method parameters startDate and endDate to the query parameters :startDate and :endDate.
      */
     @Query("SELECT j FROM Job j WHERE j.createdAt BETWEEN :startDate AND :endDate")
+    @QueryHints({@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"),
+            @QueryHint(name = HibernateHints.HINT_CACHE_REGION, value = Job.QUERY_CACHE_REGION)})
     List<Job> findByCreatedAtBetween(@Param("startDate") LocalDateTime startDate, @Param("endDate") LocalDateTime endDate);
+    /*
+     * lease queries (JobLeaseService). the ids of the candidates are read without a lock, then they are taken with
+     * one conditional UPDATE (JobRowUpdater) that only matches the ones still free.
+     * of two workers racing for a job one updates the row and the other doesn't match it and gets the rest.
+     */
+    @Query("SELECT j.id FROM Job j WHERE j.status = :status AND (:jobType IS NULL OR j.jobType = :jobType)"
+            + " AND (j.leaseExpiresAt IS NULL OR j.leaseExpiresAt < :now) ORDER BY j.id")
+    List<Long> findClaimableIds(@Param("status") Integer status, @Param("jobType") String jobType,
+                                @Param("now") LocalDateTime now, Pageable pageable);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT j FROM Job j WHERE j.id = :id")
+    Optional<Job> findLockedById(@Param("id") Long id);
+
+    //jobs created or modified after a watermark (updatedAt, id), oldest first (delta sync, see JobChangeFeed)
+    @Query("SELECT j FROM Job j WHERE j.updatedAt > :since OR (j.updatedAt = :since AND j.id > :sinceId)"
+            + " ORDER BY j.updatedAt, j.id")
+    List<Job> findChangedSince(@Param("since") LocalDateTime since, @Param("sinceId") long sinceId, Pageable pageable);
+
+    //every job as an export row (not an entity, so nothing piles up in the persistence context), in id order.
+    //the stream is a cursor, it has to be read inside a transaction and closed (see JobExport)
+    @Query("SELECT new ac.il.hit.final_project.JobExportRow(j.id, j.jobName, j.status, j.jobType, j.createdAt, j.updatedAt)"
+            + " FROM Job j ORDER BY j.id")
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"))
+    Stream<JobExportRow> streamExportRows();
+
+    //id and name of every job, used to build the jobName search index (JobNameIndex) without loading whole entities
+    @Query("SELECT j.id AS id, j.jobName AS jobName FROM Job j")
+    List<JobNameView> findAllNames();
+
+    interface JobNameView {
+        Long getId();
+        String getJobName();
+    }
+
     /*
      * esentially we translte an object query using jpa into a sql query,
      * the sql query is being runed on the db
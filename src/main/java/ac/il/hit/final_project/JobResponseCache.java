@@ -0,0 +1,217 @@
+package ac.il.hit.final_project;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Cache of already encoded JSON responses of the list endpoints
+ * (GET /jobs, /jobs/status/{status}, /jobs/jobType/{jobType}).
+ * Entries are kept in LRU order and the cache is bounded by the number of bytes it holds,
+ * not by the number of entries, since one "all jobs" entry can be bigger than hundreds of small ones.
+ * A JobChangedEvent only removes the keys the write could have changed.
+ */
+@Component
+public class JobResponseCache implements MeterBinder {
+
+    public static final String ALL_KEY = "all";
+
+    /*
+     * order of onJobChanged among the after-commit listeners: after JobReadCoalescer forgot the running reads.
+     * the other way around a fill could take the new stamp, join a read that started before the commit
+     * and store its old result under the new stamp, until the next write.
+     */
+    static final int INVALIDATE_ORDER = JobReadCoalescer.FORGET_ORDER + 10;
+
+    //rough per entry overhead of the map node, entry object and arrays
+    private static final int ENTRY_OVERHEAD_BYTES = 96;
+
+    private final long maxBytes;
+    private final int gzipMinBytes;
+
+    //guarded by this
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long sizeBytes;
+
+    //bumped by every invalidation, a fill that started before it is not stored
+    private final AtomicLong stamp = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public JobResponseCache(@Value("${jobs.response-cache.max-bytes:16777216}") long maxBytes,
+                            @Value("${jobs.response-cache.gzip-min-bytes:1024}") int gzipMinBytes) {
+        this.maxBytes = maxBytes;
+        this.gzipMinBytes = gzipMinBytes;
+    }
+
+    public static String statusKey(Integer status) {
+        return "status:" + status;
+    }
+
+    public static String jobTypeKey(String jobType) {
+        return "jobType:" + jobType;
+    }
+
+    /**
+     * @return the current invalidation stamp, read it before running the query of a fill
+     */
+    public long stamp() {
+        return stamp.get();
+    }
+
+    public Entry get(String key) {
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(key);
+        }
+        if (entry == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return entry;
+    }
+
+    /**
+     * Stores an encoded response, unless something was invalidated since the fill started
+     * @param key cache key of the endpoint
+     * @param contentType content type of the body
+     * @param body the encoded response body
+     * @param fillStamp value of stamp() taken before the query ran
+     */
+    public void put(String key, String contentType, byte[] body, long fillStamp) {
+        byte[] gzipBody = body.length >= gzipMinBytes ? gzip(body) : null;
+        Entry entry = new Entry(contentType, body, gzipBody);
+        long entrySize = entry.sizeBytes() + key.length() * 2L;
+        if (entrySize > maxBytes) {
+            return;
+        }
+        synchronized (this) {
+            if (stamp.get() != fillStamp) {
+                return;
+            }
+            Entry previous = entries.put(key, entry);
+            if (previous != null) {
+                sizeBytes -= previous.sizeBytes() + key.length() * 2L;
+            }
+            sizeBytes += entrySize;
+            Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+            while (sizeBytes > maxBytes && eldest.hasNext()) {
+                Map.Entry<String, Entry> evicted = eldest.next();
+                sizeBytes -= evicted.getValue().sizeBytes() + evicted.getKey().length() * 2L;
+                eldest.remove();
+                evictions.increment();
+            }
+        }
+    }
+
+    public synchronized void invalidate(Set<String> keys) {
+        stamp.incrementAndGet();
+        for (String key : keys) {
+            Entry removed = entries.remove(key);
+            if (removed != null) {
+                sizeBytes -= removed.sizeBytes() + key.length() * 2L;
+            }
+        }
+    }
+
+    public synchronized void invalidateAll() {
+        stamp.incrementAndGet();
+        entries.clear();
+        sizeBytes = 0;
+    }
+
+    /*
+     * a write can only change the "all" list and the status/jobType lists the job was in before
+     * and is in after the write. a password change doesn't change any response, so nothing is dropped.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    @Order(INVALIDATE_ORDER)
+    public void onJobChanged(JobChangedEvent event) {
+        JobSnapshot before = event.getBefore();
+        JobSnapshot after = event.getAfter();
+        if (Objects.equals(before, after)) {
+            return;
+        }
+        Set<String> keys = new LinkedHashSet<>();
+        keys.add(ALL_KEY);
+        for (JobSnapshot snapshot : new JobSnapshot[]{before, after}) {
+            if (snapshot != null) {
+                keys.add(statusKey(snapshot.getStatus()));
+                keys.add(jobTypeKey(snapshot.getJobType()));
+            }
+        }
+        invalidate(keys);
+    }
+
+    public synchronized long sizeBytes() {
+        return sizeBytes;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private static byte[] gzip(byte[] body) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 4 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(body);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    //jobs.response-cache.*
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("jobs.response-cache.hits", hits, LongAdder::sum).register(registry);
+        FunctionCounter.builder("jobs.response-cache.misses", misses, LongAdder::sum).register(registry);
+        FunctionCounter.builder("jobs.response-cache.evictions", evictions, LongAdder::sum).register(registry);
+        Gauge.builder("jobs.response-cache.size", this, JobResponseCache::sizeBytes)
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder("jobs.response-cache.entries", this, JobResponseCache::size).register(registry);
+    }
+
+    /*
+     * one cached response: the plain body and, for bigger bodies, the same body gzip compressed
+     */
+    @Getter
+    public static class Entry {
+        private final String contentType;
+        private final byte[] body;
+        private final byte[] gzipBody;
+
+        Entry(String contentType, byte[] body, byte[] gzipBody) {
+            this.contentType = contentType;
+            this.body = body;
+            this.gzipBody = gzipBody;
+        }
+
+        long sizeBytes() {
+            return ENTRY_OVERHEAD_BYTES + body.length + (gzipBody == null ? 0 : gzipBody.length);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package ac.il.hit.final_project;
+
+import jakarta.persistence.Cache;
+import jakarta.persistence.EntityManagerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/*
+ * single statement UPDATEs of app_job that don't go through hibernate: PATCH (JobService), claiming jobs and
+ * reaping expired leases (JobLeaseService).
+ * the UPDATE runs inside SELECT ... FROM OLD TABLE (...) (H2), so one statement writes the rows and returns them
+ * as they were before it: the returned rows tell which jobs were updated, and they are the "before" of the
+ * JobChangedEvent of each one.
+ * it runs on the jdbc connection of the current transaction. a JPQL bulk update would evict the whole "job" region
+ * and clear the persistence context on every call, this evicts only the updated jobs and the cached finder results
+ * (any write to app_job makes those stale), right away and again when the transaction completes,
+ * since a reader may put an old row back into the cache in between.
+ * the persistence context doesn't see these updates, don't use entities of the same jobs loaded before in the transaction.
+ */
+@Component
+public class JobRowUpdater {
+
+    private static final String COLUMNS = "id, job_name, status, job_type_id, created_at, version,"
+            + " lease_owner, lease_expires_at, leased_from_status";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final JobTypeDictionary jobTypeDictionary;
+    private final Cache secondLevelCache;
+
+    public JobRowUpdater(JdbcTemplate jdbcTemplate, JobTypeDictionary jobTypeDictionary,
+                         EntityManagerFactory entityManagerFactory) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.jobTypeDictionary = jobTypeDictionary;
+        this.secondLevelCache = entityManagerFactory.getCache();
+    }
+
+    /**
+     * Updates the jobs that match a condition, sets updated_at and increments version
+     * @param assignments SET list of the other columns (may be empty), e.g. "job_name = ?"
+     * @param assignmentArguments the parameters of assignments
+     * @param updatedAt the new updated_at
+     * @param condition the WHERE condition, it may end with FETCH FIRST ? ROWS ONLY
+     * @param conditionArguments the parameters of condition
+     * @return the updated jobs as they were before the update (without their password), in id order
+     */
+    public List<Job> update(String assignments, List<?> assignmentArguments, LocalDateTime updatedAt,
+                            String condition, List<?> conditionArguments) {
+        List<Object> arguments = new ArrayList<>(assignmentArguments);
+        arguments.add(updatedAt);
+        arguments.addAll(conditionArguments);
+        List<Job> old = new ArrayList<>(jdbcTemplate.query("SELECT " + COLUMNS + " FROM OLD TABLE (UPDATE app_job SET "
+                        + (assignments.isEmpty() ? "" : assignments + ", ") + "updated_at = ?, version = version + 1"
+                        + " WHERE " + condition + ")",
+                this::jobOf, arguments.toArray()));
+        if (!old.isEmpty()) {
+            old.sort((a, b) -> a.getId().compareTo(b.getId()));
+            evict(old.stream().map(Job::getId).toList());
+        }
+        return old;
+    }
+
+    //"?, ?, ?" for an IN (...) of count values
+    static String placeholders(int count) {
+        return String.join(", ", Collections.nCopies(count, "?"));
+    }
+
+    private Job jobOf(ResultSet row, int rowNumber) throws SQLException {
+        Job job = new Job();
+        job.setId(row.getLong("id"));
+        job.setJobName(row.getString("job_name"));
+        job.setStatus(row.getObject("status", Integer.class));
+        Short jobTypeId = row.getObject("job_type_id", Short.class);
+        job.setJobType(jobTypeId != null ? jobTypeDictionary.nameOf(jobTypeId) : null);
+        job.setCreatedAt(row.getObject("created_at", LocalDateTime.class));
+        job.setVersion(row.getObject("version", Long.class));
+        job.setLeaseOwner(row.getString("lease_owner"));
+        job.setLeaseExpiresAt(row.getObject("lease_expires_at", LocalDateTime.class));
+        job.setLeasedFromStatus(row.getObject("leased_from_status", Integer.class));
+        return job;
+    }
+
+    private void evict(List<Long> ids) {
+        evictNow(ids);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    evictNow(ids);
+                }
+            });
+        }
+    }
+
+    private void evictNow(List<Long> ids) {
+        for (Long id : ids) {
+            secondLevelCache.evict(Job.class, id);
+        }
+        secondLevelCache.unwrap(org.hibernate.Cache.class).evictQueryRegion(Job.QUERY_CACHE_REGION);
+    }
+}
@@ -1,36 +1,84 @@
 package ac.il.hit.final_project;
 
+import jakarta.persistence.Cache;
+import jakarta.persistence.EntityManagerFactory;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Sort;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 
 /*
  * part of the buisness logic
  * @Service- marks that the one handling the service and the injection of the dependency would be spring.
  * connectes between the repository and the controller aka the layers connection to the db and the layer handling user interaction.
+ * the write functions are @Transactional: the JobChangedEvent they publish is handled inside the same transaction
+ * by JobStatusHistory, so the status history row commits (or rolls back) together with the job.
  */
 @Service
 public class JobService {
+    //GET/POST /jobs/batch: at most this many ids per request, looked up this many per IN (...) query
+    static final int MAX_BATCH_IDS = 1000;
+    static final int BATCH_CHUNK_SIZE = 100;
+    //GET /jobs/search: at most this many jobs per request
+    static final int MAX_SEARCH_LIMIT = 100;
+
     private final JobRepository jobRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final JobReadCoalescer readCoalescer;
+    private final JobNameIndex jobNameIndex;
+    private final Cache secondLevelCache;
+    private final JobRowUpdater rowUpdater;
+    private final JobTypeDictionary jobTypeDictionary;
     private final BCryptPasswordEncoder passwordEncoder = new BCryptPasswordEncoder();
 
     /**`
      * constructor-based Dependency Injection (DI)
      * @param jobRepository the jobRepository to acsess db functions
+     * @param eventPublisher publishes a JobChangedEvent after every write
+     * @param readCoalescer shares identical concurrent reads
+     * @param jobNameIndex trigram index used by the name search
+     * @param entityManagerFactory its second level cache tells the batch lookup which jobs need no query
+     * @param rowUpdater runs the single statement of a PATCH
+     * @param jobTypeDictionary ids of the jobTypes a PATCH writes
      */
-    public JobService(JobRepository jobRepository) {
+    public JobService(JobRepository jobRepository, ApplicationEventPublisher eventPublisher,
+                      JobReadCoalescer readCoalescer, JobNameIndex jobNameIndex,
+                      EntityManagerFactory entityManagerFactory, JobRowUpdater rowUpdater,
+                      JobTypeDictionary jobTypeDictionary) {
         this.jobRepository = jobRepository;
+        this.eventPublisher = eventPublisher;
+        this.readCoalescer = readCoalescer;
+        this.jobNameIndex = jobNameIndex;
+        this.secondLevelCache = entityManagerFactory.getCache();
+        this.rowUpdater = rowUpdater;
+        this.jobTypeDictionary = jobTypeDictionary;
+    }
+
+    //status codes are 3 digits, like http ones
+    static boolean isLegalStatus(Integer status) {
+        return status != null && status >= 100 && status <= 999;
     }
 
-    //a function to validate status range
-    private Boolean validateJob(Job job) {
-        if (job.getStatus() < 100 || job.getStatus() > 999) {
-            throw new RuntimeException("Illegal status");
+    //a function to validate status range, runs before anything is looked up or written
+    private static void validateStatus(Integer status) {
+        if (!isLegalStatus(status)) {
+            throw new InvalidJobException(JobError.ILLEGAL_STATUS);
         }
-        return true;
+    }
+
+    private static List<Job> detached(List<Job> jobs) {
+        return jobs.stream().map(Job::detachedCopy).toList();
     }
 
     // Create functions
@@ -39,38 +87,140 @@ public class JobService {
      * Saves a new job
      * @param job Job entity to save
      * @return saved job if successful
+     * @throws InvalidJobException if the status is illegal
      */
+    @Transactional
     public Job saveJob(Job job) {
-        validateJob(job);
-        return jobRepository.save(job);
+        validateStatus(job.getStatus());
+        Job savedJob = jobRepository.save(job);
+        eventPublisher.publishEvent(JobChangedEvent.created(savedJob));
+        return savedJob;
     }
 
     // Read functions
+    // identical concurrent reads outside a transaction share one query (see JobReadCoalescer),
+    // each caller gets its own detached copies of the jobs
 
     /**
      * Retrieves all jobs
      * @return list of jobs
      */
     public List<Job> getAllJobs() {
-        return jobRepository.findAll();
+        return readCoalescer.execute("getAllJobs", null, () -> jobRepository.findAll(), JobService::detached);
     }
 
     public Optional<Job> findJobById(Long id) {
-        return jobRepository.findById(id);
+        return readCoalescer.execute("findJobById", id, () -> jobRepository.findById(id),
+                found -> found.map(Job::detachedCopy));
+    }
+
+    /**
+     * Finds many jobs by id in one call (GET/POST /jobs/batch).
+     * jobs already in the second level cache are taken from it, the rest are loaded with
+     * IN (...) queries of BATCH_CHUNK_SIZE ids, so a page of 200 jobs costs at most 2 queries instead of 200.
+     * everything runs in one read-only transaction (one session for the cache reads and the queries).
+     * @param ids the job ids, in the order the caller wants them back. a repeated id is returned once
+     * @return the found jobs in the order of ids, and the ids that don't exist
+     * @throws InvalidJobException if there are no ids, more than MAX_BATCH_IDS of them, or a null one
+     */
+    @Transactional(readOnly = true)
+    public JobBatchDTO findJobsByIds(List<Long> ids) {
+        if (ids == null || ids.isEmpty() || ids.size() > MAX_BATCH_IDS || ids.stream().anyMatch(Objects::isNull)) {
+            throw new InvalidJobException(JobError.ILLEGAL_IDS);
+        }
+        LinkedHashSet<Long> requested = new LinkedHashSet<>(ids);
+
+        Map<Long, Job> jobsById = new HashMap<>(requested.size() * 2);
+        List<Long> toLoad = new ArrayList<>();
+        for (Long id : requested) {
+            if (secondLevelCache.contains(Job.class, id)) {
+                //served by the "job" region without a query (it was evicted in between? then findById loads it alone)
+                jobRepository.findById(id).ifPresent(job -> jobsById.put(id, job));
+            } else {
+                toLoad.add(id);
+            }
+        }
+        for (int from = 0; from < toLoad.size(); from += BATCH_CHUNK_SIZE) {
+            List<Long> chunk = toLoad.subList(from, Math.min(from + BATCH_CHUNK_SIZE, toLoad.size()));
+            for (Job job : jobRepository.findAllById(chunk)) {
+                jobsById.put(job.getId(), job);
+            }
+        }
+
+        List<JobDTO> jobs = new ArrayList<>(jobsById.size());
+        List<Long> missing = new ArrayList<>();
+        for (Long id : requested) {
+            Job job = jobsById.get(id);
+            if (job != null) {
+                jobs.add(new JobDTO(job));
+            } else {
+                missing.add(id);
+            }
+        }
+        return new JobBatchDTO(jobs, missing);
     }
 
     public List<Job> findJobByStatus(Integer status) {
-        return jobRepository.findByStatus(status);
+        return readCoalescer.execute("findJobByStatus", status, () -> jobRepository.findByStatus(status),
+                JobService::detached);
     }
 
     public List<Job> findJobByType(String type) {
-        return jobRepository.findByJobType(type);
+        return readCoalescer.execute("findJobByType", type, () -> jobRepository.findByJobType(type),
+                JobService::detached);
     }
 
     public List<Job> findJobByDateRange(LocalDateTime startDate, LocalDateTime endDate) {
         return jobRepository.findByCreatedAtBetween(startDate, endDate);
     }
 
+    /**
+     * Finds jobs matching any combination of criteria with one dynamic query
+     * @param jobQuery status set, jobType set, created/updated ranges, sort and limit
+     * @return matching jobs in the requested order, at most limit of them
+     * @throws InvalidJobException if the sort or limit are illegal
+     */
+    public List<Job> findJobsByQuery(JobQuery jobQuery) {
+        if (jobQuery.getLimit() < 1 || jobQuery.getLimit() > JobSpecifications.MAX_LIMIT) {
+            throw new InvalidJobException(JobError.ILLEGAL_LIMIT);
+        }
+        Sort sort = JobSpecifications.sortOf(jobQuery.getSort());
+        return jobRepository.findBy(JobSpecifications.of(jobQuery),
+                query -> query.sortBy(sort).limit(jobQuery.getLimit()).all());
+    }
+
+    /**
+     * Finds jobs by a fragment of their name, using the trigram index instead of a table scan
+     * @param query the name fragment (case insensitive)
+     * @param limit max number of jobs to return (1..MAX_SEARCH_LIMIT)
+     * @return matching jobs, best match first
+     * @throws InvalidJobException if the limit is illegal
+     */
+    public List<Job> searchJobsByName(String query, int limit) {
+        if (limit < 1 || limit > MAX_SEARCH_LIMIT) {
+            throw new InvalidJobException(JobError.ILLEGAL_LIMIT);
+        }
+        List<Long> ids = jobNameIndex.search(query, limit);
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        Map<Long, Job> jobsById = new HashMap<>();
+        for (Job job : jobRepository.findAllById(ids)) {
+            jobsById.put(job.getId(), job);
+        }
+        List<Job> jobs = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            Job job = jobsById.get(id);
+            if (job != null) {
+                jobs.add(job);
+            } else {
+                //removed behind the back of JobService (e.g. a bulk delete), drop it from the index too
+                jobNameIndex.remove(id);
+            }
+        }
+        return jobs;
+    }
+
     // Update functions
 
     /**
@@ -78,44 +228,119 @@ public class JobService {
      * @param id ID of the job to update
      * @param jobDetails all details from JSON in the request body
      * @return updated job entity
-     * @throws RuntimeException if id is not in database
+     * @throws InvalidJobException if the new status is illegal
+     * @throws JobNotFoundException if id is not in database
      */
+    @Transactional
     public Job updateJob(Long id, Job jobDetails) {
-        Job job = jobRepository.findById(id).orElseThrow(() ->
-                new RuntimeException("Job not found"));
+        validateStatus(jobDetails.getStatus());
+        Job job = jobRepository.findById(id).orElseThrow(JobNotFoundException::new);
+        JobSnapshot before = JobSnapshot.of(job);
         job.setJobName(jobDetails.getJobName());
-        if(validateJob(jobDetails))
-            {job.setStatus(jobDetails.getStatus());}
+        job.setStatus(jobDetails.getStatus());
         job.setJobType(jobDetails.getJobType());
         //job.setUpdatedAt(LocalDateTime.now()); -> the db as onUpdate() fun that automaticliy activated on change!
-        return jobRepository.save(job);
+        Job savedJob = jobRepository.save(job);
+        eventPublisher.publishEvent(JobChangedEvent.updated(before, savedJob));
+        return savedJob;
+    }
+
+    /**
+     * Changes only the fields a PATCH sent, the others keep their values.
+     * one statement and no read before it: an UPDATE of just the sent columns (and updated_at, version) that also
+     * returns the row as it was, for the JobChangedEvent (see JobRowUpdater). no row back means there is no such job.
+     * only this job and the cached finder results are evicted from the second level cache.
+     * @param id ID of the job to patch
+     * @param patch the fields to change, null ones are left alone
+     * @return the patched job (without its password, it isn't read)
+     * @throws InvalidJobException if a new status is illegal
+     * @throws JobNotFoundException if id is not in database
+     */
+    @Transactional
+    public Job patchJob(Long id, JobPatchRequest patch) {
+        if (patch.getStatus() != null) {
+            validateStatus(patch.getStatus());
+        }
+        if (patch.getJobName() == null && patch.getJobType() == null && patch.getStatus() == null) {
+            //nothing to write
+            return jobRepository.findById(id).orElseThrow(JobNotFoundException::new);
+        }
+        String jobType = patch.getJobType() != null ? jobTypeDictionary.register(patch.getJobType()) : null;
+        LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.MICROS);
+        List<String> columns = new ArrayList<>();
+        List<Object> values = new ArrayList<>();
+        if (patch.getJobName() != null) {
+            columns.add("job_name = ?");
+            values.add(patch.getJobName());
+        }
+        if (jobType != null) {
+            columns.add("job_type_id = ?");
+            values.add(jobTypeDictionary.idOf(jobType));
+        }
+        if (patch.getStatus() != null) {
+            columns.add("status = ?");
+            values.add(patch.getStatus());
+        }
+        List<Job> old = rowUpdater.update(String.join(", ", columns), values, now, "id = ?", List.of(id));
+        if (old.isEmpty()) {
+            throw new JobNotFoundException();
+        }
+
+        Job job = old.get(0);
+        JobSnapshot before = JobSnapshot.of(job);
+        if (patch.getJobName() != null) {
+            job.setJobName(patch.getJobName());
+        }
+        if (jobType != null) {
+            job.setJobType(jobType);
+        }
+        if (patch.getStatus() != null) {
+            job.setStatus(patch.getStatus());
+        }
+        job.setUpdatedAt(now);
+        job.setVersion(job.getVersion() != null ? job.getVersion() + 1 : null);
+        //a patch with the values the job already had changes nothing the listeners care about
+        if (!before.equals(JobSnapshot.of(job))) {
+            eventPublisher.publishEvent(JobChangedEvent.updated(before, job));
+        }
+        return job;
     }
 
+    @Transactional
     public Job updateJobPassword(Long id, String oldPassword, String newPassword) {
-        Job job = jobRepository.findById(id).orElseThrow(() ->
-                new RuntimeException("Job not found"));
+        if (oldPassword == null || newPassword == null) {
+            throw new InvalidJobException(JobError.MISSING_PASSWORD);
+        }
+        Job job = jobRepository.findById(id).orElseThrow(JobNotFoundException::new);
         if (!passwordEncoder.matches(oldPassword, job.getPassword())) {
-            throw new RuntimeException("Wrong password");
+            throw new InvalidJobException(JobError.WRONG_PASSWORD);
         } else {
+            JobSnapshot before = JobSnapshot.of(job);
             job.setPassword(newPassword);
-            return jobRepository.save(job);
+            Job savedJob = jobRepository.save(job);
+            eventPublisher.publishEvent(JobChangedEvent.updated(before, savedJob));
+            return savedJob;
         }
     }
 
+    @Transactional
     public Job updateJobStatus(Long id, Integer status){
-        Job job = jobRepository.findById(id).orElseThrow(() ->
-                new RuntimeException("Job not found"));
-        if(validateJob(job)) {
-            job.setStatus(status);
-        }
-        return jobRepository.save(job);
+        //the new status is the one to validate, not the one the job has now
+        validateStatus(status);
+        Job job = jobRepository.findById(id).orElseThrow(JobNotFoundException::new);
+        JobSnapshot before = JobSnapshot.of(job);
+        job.setStatus(status);
+        Job savedJob = jobRepository.save(job);
+        eventPublisher.publishEvent(JobChangedEvent.updated(before, savedJob));
+        return savedJob;
     }
 
     // Delete functions
 
+    @Transactional
     public void deleteJob(Long id) {
-        jobRepository.findById(id).orElseThrow(() ->
-                new RuntimeException("Job not found"));
+        Job job = jobRepository.findById(id).orElseThrow(JobNotFoundException::new);
         jobRepository.deleteById(id);
+        eventPublisher.publishEvent(JobChangedEvent.deleted(JobSnapshot.of(job)));
     }
 }
\ No newline at end of file
@@ -0,0 +1,23 @@
+package ac.il.hit.final_project;
+
+import lombok.Value;
+
+import java.time.LocalDateTime;
+
+/*
+ * immutable copy of the visible fields of a job at one point in time.
+ * Job entities are changed in place, so a write has to take this copy before it changes anything
+ * if listeners need to know the old values.
+ */
+@Value
+public class JobSnapshot {
+    Long id;
+    String jobName;
+    Integer status;
+    String jobType;
+    LocalDateTime createdAt;
+
+    public static JobSnapshot of(Job job) {
+        return new JobSnapshot(job.getId(), job.getJobName(), job.getStatus(), job.getJobType(), job.getCreatedAt());
+    }
+}
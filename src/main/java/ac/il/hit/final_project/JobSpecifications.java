@@ -0,0 +1,102 @@
+package ac.il.hit.final_project;
+
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+/*
+ * building blocks for the dynamic queries of GET /jobs/query.
+ * every criterion that is set becomes one predicate, all of them go into a single WHERE clause,
+ * so hibernate sends one statement no matter how many criteria the client combines.
+ * the composite indexes on app_job (see Job) are ordered to match the usual combinations:
+ * status / jobType equality first, then the createdAt range.
+ * jobType criteria compare the small dictionary id (see JobTypeConverter), not the name.
+ */
+public final class JobSpecifications {
+
+    public static final int MAX_LIMIT = 1000;
+
+    private static final Set<String> SORTABLE_FIELDS = Set.of("id", "jobName", "status", "jobType", "createdAt", "updatedAt");
+
+    private JobSpecifications() {
+    }
+
+    public static Specification<Job> statusIn(Collection<Integer> statuses) {
+        return (root, query, cb) -> root.get("status").in(statuses);
+    }
+
+    public static Specification<Job> jobTypeIn(Collection<String> jobTypes) {
+        return (root, query, cb) -> root.get("jobType").in(jobTypes);
+    }
+
+    public static Specification<Job> createdFrom(LocalDateTime from) {
+        return (root, query, cb) -> cb.greaterThanOrEqualTo(root.get("createdAt"), from);
+    }
+
+    public static Specification<Job> createdTo(LocalDateTime to) {
+        return (root, query, cb) -> cb.lessThanOrEqualTo(root.get("createdAt"), to);
+    }
+
+    public static Specification<Job> updatedFrom(LocalDateTime from) {
+        return (root, query, cb) -> cb.greaterThanOrEqualTo(root.get("updatedAt"), from);
+    }
+
+    public static Specification<Job> updatedTo(LocalDateTime to) {
+        return (root, query, cb) -> cb.lessThanOrEqualTo(root.get("updatedAt"), to);
+    }
+
+    /**
+     * Combines all criteria of a query into one specification
+     * @param jobQuery the criteria from the query string
+     * @return the specification (matches everything if no criterion is set)
+     */
+    public static Specification<Job> of(JobQuery jobQuery) {
+        List<Specification<Job>> specifications = new ArrayList<>();
+        if (jobQuery.getStatus() != null && !jobQuery.getStatus().isEmpty()) {
+            specifications.add(statusIn(jobQuery.getStatus()));
+        }
+        if (jobQuery.getJobType() != null && !jobQuery.getJobType().isEmpty()) {
+            specifications.add(jobTypeIn(jobQuery.getJobType()));
+        }
+        if (jobQuery.getCreatedFrom() != null) {
+            specifications.add(createdFrom(jobQuery.getCreatedFrom()));
+        }
+        if (jobQuery.getCreatedTo() != null) {
+            specifications.add(createdTo(jobQuery.getCreatedTo()));
+        }
+        if (jobQuery.getUpdatedFrom() != null) {
+            specifications.add(updatedFrom(jobQuery.getUpdatedFrom()));
+        }
+        if (jobQuery.getUpdatedTo() != null) {
+            specifications.add(updatedTo(jobQuery.getUpdatedTo()));
+        }
+        return Specification.allOf(specifications);
+    }
+
+    /**
+     * Parses the sort parameter ("field" or "field,asc|desc")
+     * @throws InvalidJobException for an unknown field or direction
+     */
+    public static Sort sortOf(String sort) {
+        if (sort == null || sort.isBlank()) {
+            return Sort.by(Sort.Direction.DESC, "createdAt");
+        }
+        String[] parts = sort.split(",");
+        String field = parts[0].trim();
+        if (!SORTABLE_FIELDS.contains(field) || parts.length > 2) {
+            throw new InvalidJobException(JobError.ILLEGAL_SORT);
+        }
+        Sort.Direction direction = parts.length == 2
+                ? Sort.Direction.fromOptionalString(parts[1].trim()).orElseThrow(() -> new InvalidJobException(JobError.ILLEGAL_SORT))
+                : Sort.Direction.ASC;
+        //the jobType column only holds the dictionary id, sort by the name it stands for
+        String property = "jobType".equals(field) ? "jobTypeRef.name" : field;
+        //id as tie breaker keeps the order stable between calls
+        return Sort.by(direction, property).and(Sort.by(Sort.Direction.ASC, "id"));
+    }
+}
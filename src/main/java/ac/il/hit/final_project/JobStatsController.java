@@ -0,0 +1,54 @@
+package ac.il.hit.final_project;
+
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * `@ -GetMapping("/jobs/stats/transitions")`: Status transition counts per minute or hour.
+ * e.g. /jobs/stats/transitions?resolution=hour&from=2024-07-01T00:00:00&toStatus=500&jobType=build
+ * the counts come from the rollups (see JobStatusHistory), so the last minute or two are not in them yet.
+ * `@ -GetMapping("/jobs/stats/durations")`: p50/p90/p99/max of the time jobs took until a terminal status, per jobType.
+ * e.g. /jobs/stats/durations?from=2024-07-01T00:00:00&jobType=build (durations in milliseconds, see JobDurationSketches)
+ */
+@RestController
+@RequestMapping("/jobs/stats")
+public class JobStatsController {
+
+    private final JobStatusHistory jobStatusHistory;
+    private final JobDurationSketches jobDurationSketches;
+
+    public JobStatsController(JobStatusHistory jobStatusHistory, JobDurationSketches jobDurationSketches) {
+        this.jobStatusHistory = jobStatusHistory;
+        this.jobDurationSketches = jobDurationSketches;
+    }
+
+    //to defaults to now, fromStatus 0 means "created" and toStatus 0 means "deleted"
+    @GetMapping("/transitions")
+    public ResponseEntity<List<JobStatusRollup>> getTransitions(
+            @RequestParam(defaultValue = "minute") String resolution,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(required = false) Integer fromStatus,
+            @RequestParam(required = false) Integer toStatus,
+            @RequestParam(required = false) String jobType) {
+        JobStatusRollup.Resolution bucket = JobStatusRollup.Resolution.of(resolution);
+        return ResponseEntity.ok(jobStatusHistory.findTransitions(bucket, from, to != null ? to : LocalDateTime.now(),
+                fromStatus, toStatus, jobType));
+    }
+
+    //to defaults to now, the range is counted in whole hours
+    @GetMapping("/durations")
+    public ResponseEntity<List<JobDurationStats>> getDurations(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(required = false) String jobType) {
+        return ResponseEntity.ok(jobDurationSketches.findDurations(from, to != null ? to : LocalDateTime.now(), jobType));
+    }
+}
@@ -0,0 +1,61 @@
+package ac.il.hit.final_project;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.Immutable;
+
+import java.time.LocalDateTime;
+
+/**
+ * One status transition of a job, mapped to the append-only table job_status_event.
+ * A row is written in the same transaction as the change of the job (see JobStatusHistory) and never updated.
+ * A created job is a transition from NO_STATUS, a deleted job is a transition to NO_STATUS.
+ * The ids come from a sequence that hands out 50 at a time, so hibernate can batch the inserts
+ * (an IDENTITY column would force one insert per row to read back the id).
+ */
+@Getter
+@Entity
+@Immutable
+@NoArgsConstructor
+@Table(name = "job_status_event", indexes = {
+        //the rollup reads the events of a time range
+        @Index(name = "idx_job_status_event_occurred", columnList = "occurred_at")
+})
+public class JobStatusEvent {
+
+    //status codes are 100..999, 0 stands for "no status"
+    public static final int NO_STATUS = 0;
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "job_status_event_seq")
+    @SequenceGenerator(name = "job_status_event_seq", sequenceName = "job_status_event_seq", allocationSize = 50)
+    private Long id;
+    private Long jobId;
+    private int fromStatus;
+    private int toStatus;
+    private String jobType;
+    private LocalDateTime occurredAt;
+
+    public JobStatusEvent(Long jobId, int fromStatus, int toStatus, String jobType, LocalDateTime occurredAt) {
+        this.jobId = jobId;
+        this.fromStatus = fromStatus;
+        this.toStatus = toStatus;
+        this.jobType = jobType;
+        this.occurredAt = occurredAt;
+    }
+
+    //the transition of a JobChangedEvent, jobType is the one after the change (before it for a delete)
+    public static JobStatusEvent of(JobChangedEvent event, LocalDateTime occurredAt) {
+        JobSnapshot before = event.getBefore();
+        JobSnapshot after = event.getAfter();
+        return new JobStatusEvent(event.getJobId(),
+                statusOf(before), statusOf(after),
+                after != null ? after.getJobType() : before.getJobType(),
+                occurredAt);
+    }
+
+    private static int statusOf(JobSnapshot snapshot) {
+        return snapshot == null || snapshot.getStatus() == null ? NO_STATUS : snapshot.getStatus();
+    }
+}
@@ -0,0 +1,13 @@
+package ac.il.hit.final_project;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+
+import java.time.LocalDateTime;
+
+//the append-only job_status_event log, only JobStatusHistory writes and reads it
+public interface JobStatusEventRepository extends JpaRepository<JobStatusEvent, Long> {
+
+    @Query("SELECT MIN(e.occurredAt) FROM JobStatusEvent e")
+    LocalDateTime findFirstOccurredAt();
+}
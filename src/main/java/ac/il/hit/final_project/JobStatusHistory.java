@@ -0,0 +1,143 @@
+package ac.il.hit.final_project;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static ac.il.hit.final_project.JobStatusRollup.Resolution.HOUR;
+import static ac.il.hit.final_project.JobStatusRollup.Resolution.MINUTE;
+
+/*
+ * history of the status transitions of the jobs.
+ * every JobChangedEvent that changes a status appends a row to job_status_event. the listener is a plain
+ * @EventListener, so it runs inside the transaction of the write (JobService / JobLeaseService) and the row
+ * commits or rolls back together with the job. the inserts are flushed with the rest of the transaction
+ * in jdbc batches (hibernate.jdbc.batch_size), a claim of 100 jobs is one batch and not 100 round trips.
+ *
+ * in the background the events are rolled up into per minute counts, and the minute counts into per hour counts,
+ * by (fromStatus, toStatus, jobType). a minute is only rolled up once it is older than the lag, so a transaction
+ * that started in it had time to commit. a transaction that takes longer than the lag commits its events into
+ * a minute that is already rolled up, so every run also counts again the minutes of the "recompute" period before
+ * the first minute not rolled up yet (and the hours they are in): their buckets are deleted and recounted from the events.
+ * the counting is done by the database, one INSERT ... SELECT ... GROUP BY per resolution.
+ */
+@Service
+public class JobStatusHistory {
+
+    private static final Logger logger = LoggerFactory.getLogger(JobStatusHistory.class);
+
+    //most buckets one stats query may return
+    static final int MAX_BUCKETS = 10_000;
+
+    private final JobStatusEventRepository eventRepository;
+    private final JobStatusRollupRepository rollupRepository;
+    private final Duration lag;
+    private final Duration recompute;
+
+    public JobStatusHistory(JobStatusEventRepository eventRepository, JobStatusRollupRepository rollupRepository,
+                            @Value("${jobs.status-history.rollup-lag:30s}") Duration lag,
+                            @Value("${jobs.status-history.rollup-recompute:5m}") Duration recompute) {
+        this.eventRepository = eventRepository;
+        this.rollupRepository = rollupRepository;
+        this.lag = lag;
+        this.recompute = recompute;
+    }
+
+    @EventListener
+    public void onJobChanged(JobChangedEvent event) {
+        if (event.statusChanged()) {
+            eventRepository.save(JobStatusEvent.of(event, LocalDateTime.now()));
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${jobs.status-history.rollup-interval-ms:60000}",
+            initialDelayString = "${jobs.status-history.rollup-interval-ms:60000}")
+    @Transactional
+    public void rollUp() {
+        int buckets = rollUp(LocalDateTime.now());
+        if (buckets > 0) {
+            logger.info("Rolled up {} status transition buckets", buckets);
+        }
+    }
+
+    /**
+     * Rolls up the events of every minute (and hour) that closed before now - lag and isn't rolled up yet,
+     * and counts the minutes of the last recompute period (and their hours) again
+     * @param now current time
+     * @return number of minute and hour rows written
+     */
+    @Transactional
+    public int rollUp(LocalDateTime now) {
+        LocalDateTime closedBefore = now.minus(lag).truncatedTo(MINUTE.unit());
+        LocalDateTime minutesFrom = minutesFrom(closedBefore);
+        if (minutesFrom == null) {
+            return 0;
+        }
+        int buckets = rollUp(MINUTE, minutesFrom, closedBefore);
+        LocalDateTime hoursBefore = closedBefore.truncatedTo(HOUR.unit());
+        //the hours of the minutes just counted, and any earlier one that isn't rolled up yet
+        LocalDateTime hoursFrom = minutesFrom.truncatedTo(HOUR.unit());
+        LocalDateTime lastHour = rollupRepository.findLastBucketStart(HOUR);
+        LocalDateTime notRolledUp = lastHour != null ? lastHour.plusHours(1) : rollupRepository.findFirstBucketStart(MINUTE);
+        if (notRolledUp != null && notRolledUp.isBefore(hoursFrom)) {
+            hoursFrom = notRolledUp.truncatedTo(HOUR.unit());
+        }
+        return buckets + rollUp(HOUR, hoursFrom, hoursBefore);
+    }
+
+    //the recompute period before the first minute that isn't rolled up yet
+    private LocalDateTime minutesFrom(LocalDateTime closedBefore) {
+        LocalDateTime lastMinute = rollupRepository.findLastBucketStart(MINUTE);
+        if (lastMinute == null) {
+            LocalDateTime firstEvent = eventRepository.findFirstOccurredAt();
+            return firstEvent != null ? firstEvent.truncatedTo(MINUTE.unit()) : null;
+        }
+        LocalDateTime notRolledUp = lastMinute.plusMinutes(1).isBefore(closedBefore) ? lastMinute.plusMinutes(1) : closedBefore;
+        return notRolledUp.minus(recompute).truncatedTo(MINUTE.unit());
+    }
+
+    //replaces the buckets of [from, to)
+    private int rollUp(JobStatusRollup.Resolution resolution, LocalDateTime from, LocalDateTime to) {
+        if (!from.isBefore(to)) {
+            return 0;
+        }
+        rollupRepository.deleteBuckets(resolution, from, to);
+        return resolution == MINUTE ? rollupRepository.insertMinuteBuckets(from, to) : rollupRepository.insertHourBuckets(from, to);
+    }
+
+    /**
+     * Reads transition counts from the rollups, never from the raw events
+     * @param resolution minute or hour buckets
+     * @param from start of the first bucket (rounded down to the resolution)
+     * @param to end of the range, exclusive
+     * @param fromStatus optional, only transitions from this status (0 = created)
+     * @param toStatus optional, only transitions to this status (0 = deleted)
+     * @param jobType optional, only transitions of jobs of this type
+     * @return one row per bucket and transition that happened in it, oldest first
+     * @throws InvalidJobException if the range is empty or spans more than MAX_BUCKETS buckets
+     */
+    public List<JobStatusRollup> findTransitions(JobStatusRollup.Resolution resolution, LocalDateTime from, LocalDateTime to,
+                                                 Integer fromStatus, Integer toStatus, String jobType) {
+        LocalDateTime start = from.truncatedTo(resolution.unit());
+        if (!start.isBefore(to)) {
+            throw new InvalidJobException(JobError.ILLEGAL_RANGE);
+        }
+        if (resolution.unit().between(start, to) > MAX_BUCKETS) {
+            throw new InvalidJobException(JobError.RANGE_TOO_LARGE);
+        }
+        return rollupRepository.findBuckets(resolution, start, to, fromStatus, toStatus,
+                jobType != null ? typeKey(jobType) : null);
+    }
+
+    private static String typeKey(String jobType) {
+        return jobType != null ? jobType : "";
+    }
+}
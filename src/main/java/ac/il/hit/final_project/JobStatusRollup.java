@@ -0,0 +1,81 @@
+package ac.il.hit.final_project;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * Number of status transitions (fromStatus -> toStatus) of one jobType in one minute or hour,
+ * mapped to the table job_status_rollup.
+ * The rows are computed in the background from job_status_event (see JobStatusHistory),
+ * the stats endpoints only read these rows and never the raw events.
+ * jobType is "" for jobs without a type, it is part of the primary key and can't be null.
+ */
+@Getter
+@Entity
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(name = "job_status_rollup")
+@IdClass(JobStatusRollup.Key.class)
+@JsonPropertyOrder({"bucketStart", "fromStatus", "toStatus", "jobType", "transitions"})
+public class JobStatusRollup {
+
+    public enum Resolution {
+        MINUTE(ChronoUnit.MINUTES), HOUR(ChronoUnit.HOURS);
+
+        private final ChronoUnit unit;
+
+        Resolution(ChronoUnit unit) {
+            this.unit = unit;
+        }
+
+        public ChronoUnit unit() {
+            return unit;
+        }
+
+        //the resolution parameter of GET /jobs/stats/transitions, case insensitive
+        public static Resolution of(String name) {
+            for (Resolution resolution : values()) {
+                if (resolution.name().equalsIgnoreCase(name)) {
+                    return resolution;
+                }
+            }
+            throw new InvalidJobException(JobError.ILLEGAL_RESOLUTION);
+        }
+    }
+
+    //the primary key columns are in the order the stats queries filter by them
+    @Id
+    @JsonIgnore
+    @Enumerated(EnumType.STRING)
+    private Resolution resolution;
+    @Id
+    private LocalDateTime bucketStart;
+    @Id
+    private int fromStatus;
+    @Id
+    private int toStatus;
+    @Id
+    private String jobType;
+
+    private long transitions;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private Resolution resolution;
+        private LocalDateTime bucketStart;
+        private int fromStatus;
+        private int toStatus;
+        private String jobType;
+    }
+}
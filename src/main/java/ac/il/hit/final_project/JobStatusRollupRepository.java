@@ -0,0 +1,56 @@
+package ac.il.hit.final_project;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+//per minute / per hour transition counts, see JobStatusRollup
+public interface JobStatusRollupRepository extends JpaRepository<JobStatusRollup, JobStatusRollup.Key> {
+
+    //start of the last bucket rolled up, null if there is none yet
+    @Query("SELECT MAX(r.bucketStart) FROM JobStatusRollup r WHERE r.resolution = :resolution")
+    LocalDateTime findLastBucketStart(@Param("resolution") JobStatusRollup.Resolution resolution);
+
+    @Query("SELECT MIN(r.bucketStart) FROM JobStatusRollup r WHERE r.resolution = :resolution")
+    LocalDateTime findFirstBucketStart(@Param("resolution") JobStatusRollup.Resolution resolution);
+
+    @Modifying
+    @Query("DELETE FROM JobStatusRollup r WHERE r.resolution = :resolution AND r.bucketStart >= :from AND r.bucketStart < :to")
+    int deleteBuckets(@Param("resolution") JobStatusRollup.Resolution resolution,
+                      @Param("from") LocalDateTime from, @Param("to") LocalDateTime to);
+
+    //counts the events of [from, to) per minute in the database, one statement however many buckets there are
+    @Modifying(flushAutomatically = true)
+    @Query("INSERT INTO JobStatusRollup (resolution, bucketStart, fromStatus, toStatus, jobType, transitions)"
+            + " SELECT ac.il.hit.final_project.JobStatusRollup.Resolution.MINUTE, truncate(e.occurredAt, minute),"
+            + " e.fromStatus, e.toStatus, coalesce(e.jobType, ''), count(*)"
+            + " FROM JobStatusEvent e WHERE e.occurredAt >= :from AND e.occurredAt < :to"
+            + " GROUP BY truncate(e.occurredAt, minute), e.fromStatus, e.toStatus, coalesce(e.jobType, '')")
+    int insertMinuteBuckets(@Param("from") LocalDateTime from, @Param("to") LocalDateTime to);
+
+    //sums the minute buckets of [from, to) per hour
+    @Modifying(flushAutomatically = true)
+    @Query("INSERT INTO JobStatusRollup (resolution, bucketStart, fromStatus, toStatus, jobType, transitions)"
+            + " SELECT ac.il.hit.final_project.JobStatusRollup.Resolution.HOUR, truncate(r.bucketStart, hour),"
+            + " r.fromStatus, r.toStatus, r.jobType, sum(r.transitions)"
+            + " FROM JobStatusRollup r WHERE r.resolution = ac.il.hit.final_project.JobStatusRollup.Resolution.MINUTE"
+            + " AND r.bucketStart >= :from AND r.bucketStart < :to"
+            + " GROUP BY truncate(r.bucketStart, hour), r.fromStatus, r.toStatus, r.jobType")
+    int insertHourBuckets(@Param("from") LocalDateTime from, @Param("to") LocalDateTime to);
+
+    //the buckets of [from, to), the status / jobType filters are optional (null matches everything)
+    @Query("SELECT r FROM JobStatusRollup r WHERE r.resolution = :resolution"
+            + " AND r.bucketStart >= :from AND r.bucketStart < :to"
+            + " AND (:fromStatus IS NULL OR r.fromStatus = :fromStatus)"
+            + " AND (:toStatus IS NULL OR r.toStatus = :toStatus)"
+            + " AND (:jobType IS NULL OR r.jobType = :jobType)"
+            + " ORDER BY r.bucketStart, r.fromStatus, r.toStatus, r.jobType")
+    List<JobStatusRollup> findBuckets(@Param("resolution") JobStatusRollup.Resolution resolution,
+                                      @Param("from") LocalDateTime from, @Param("to") LocalDateTime to,
+                                      @Param("fromStatus") Integer fromStatus, @Param("toStatus") Integer toStatus,
+                                      @Param("jobType") String jobType);
+}
@@ -0,0 +1,30 @@
+package ac.il.hit.final_project;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Marker of a deleted job, mapped to the table job_tombstone.
+ * Written in the transaction of JobService.deleteJob (see JobChangeFeed), so GET /jobs/changes can tell
+ * clients which jobs to remove from their mirror. Tombstones are kept for the tombstone retention only.
+ */
+@Getter
+@Entity
+@NoArgsConstructor
+@Table(name = "job_tombstone", indexes = {
+        @Index(name = "idx_job_tombstone_deleted", columnList = "deleted_at, job_id")
+})
+public class JobTombstone {
+
+    @Id
+    private Long jobId;
+    private LocalDateTime deletedAt;
+
+    public JobTombstone(Long jobId, LocalDateTime deletedAt) {
+        this.jobId = jobId;
+        this.deletedAt = deletedAt;
+    }
+}
@@ -0,0 +1,22 @@
+package ac.il.hit.final_project;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+//tombstones of deleted jobs, only JobChangeFeed reads and writes them
+public interface JobTombstoneRepository extends JpaRepository<JobTombstone, Long> {
+
+    @Query("SELECT t FROM JobTombstone t WHERE t.deletedAt > :since OR (t.deletedAt = :since AND t.jobId > :sinceId)"
+            + " ORDER BY t.deletedAt, t.jobId")
+    List<JobTombstone> findDeletedSince(@Param("since") LocalDateTime since, @Param("sinceId") long sinceId, Pageable pageable);
+
+    @Modifying
+    @Query("DELETE FROM JobTombstone t WHERE t.deletedAt < :before")
+    int deleteOlderThan(@Param("before") LocalDateTime before);
+}
@@ -0,0 +1,25 @@
+package ac.il.hit.final_project;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.Immutable;
+
+/**
+ * One entry of the jobType dictionary, mapped to the lookup table job_type.
+ * app_job stores the small id (job_type_id) instead of repeating the name in every row, see JobTypeDictionary.
+ * Entries are only ever added, never changed or removed.
+ */
+@Getter
+@Entity
+@Immutable
+@NoArgsConstructor
+@Table(name = "job_type", uniqueConstraints = @UniqueConstraint(name = "uk_job_type_name", columnNames = "name"))
+public class JobType {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Short id;
+    @Column(nullable = false)
+    private String name;
+}
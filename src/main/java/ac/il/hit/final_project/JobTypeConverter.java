@@ -0,0 +1,33 @@
+package ac.il.hit.final_project;
+
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+import org.springframework.stereotype.Component;
+
+/*
+ * stores Job.jobType as the small id of its entry in the job_type dictionary (app_job.job_type_id).
+ * applies to query parameters too: "j.jobType = :jobType" becomes an integer comparison on the indexed id column.
+ * it only looks names up, a new type must be registered first (JobTypeListener does that before a job is written),
+ * so a query for an unknown type doesn't add it to the dictionary, it just matches nothing.
+ * hibernate gets the instance from spring (SpringBeanContainer), so the dictionary can be injected.
+ */
+@Component
+@Converter
+public class JobTypeConverter implements AttributeConverter<String, Short> {
+
+    private final JobTypeDictionary dictionary;
+
+    public JobTypeConverter(JobTypeDictionary dictionary) {
+        this.dictionary = dictionary;
+    }
+
+    @Override
+    public Short convertToDatabaseColumn(String jobType) {
+        return jobType != null ? dictionary.idOf(jobType) : null;
+    }
+
+    @Override
+    public String convertToEntityAttribute(Short id) {
+        return id != null ? dictionary.nameOf(id) : null;
+    }
+}
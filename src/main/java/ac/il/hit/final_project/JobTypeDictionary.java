@@ -0,0 +1,225 @@
+package ac.il.hit.final_project;
+
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/*
+ * in-process cache of the job_type lookup table: name <-> small id.
+ * there are only about ten job types, so both directions are kept in memory for good.
+ * the names handed out are canonical: every loaded job of a type shares the one String instance kept here,
+ * instead of holding its own copy read from the result set.
+ *
+ * all types are loaded once the application is ready, so a write almost never meets an unknown one.
+ * a new type is inserted on the connection of the caller: inside the transaction of the job that brought it
+ * (JobTypeListener runs in @PrePersist/@PreUpdate), or on its own when there is none.
+ * it never needs a second connection, a transaction holding one and waiting for another could starve the pool.
+ * an id inserted in a transaction is only visible to that transaction until it commits (pendingTypes),
+ * so a rollback can't leave a cached id without a row.
+ * a name that isn't in the table (a query for a type no job has) is remembered as missing for a few seconds,
+ * so repeating such a query doesn't look it up every time. a write doesn't trust that, register always looks.
+ *
+ * no dependency on the transaction manager: the converter needs the dictionary while the entityManagerFactory
+ * (which the transaction manager needs) is still being created.
+ */
+@Component
+public class JobTypeDictionary {
+
+    //id of a name that isn't in the dictionary, matches no row
+    static final short UNKNOWN_ID = -1;
+
+    //how long idOf trusts that a name isn't in the table, a type another instance adds is seen after that
+    static final Duration MISS_TTL = Duration.ofSeconds(5);
+    //the names come from query strings, when there are more misses than this they are all forgotten
+    static final int MAX_MISSES = 1024;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final ConcurrentMap<String, Short> idsByName = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Short, String> namesById = new ConcurrentHashMap<>();
+    //name -> System.nanoTime() until which it is known to be missing
+    private final ConcurrentMap<String, Long> missingUntil = new ConcurrentHashMap<>();
+
+    public JobTypeDictionary(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    //loads every type before the first request (and before DatabaseSeeder), the table only exists once hibernate is up
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void preload() {
+        jdbcTemplate.query("SELECT id, name FROM job_type", row -> {
+            cache(row.getShort("id"), row.getString("name"));
+        });
+    }
+
+    /**
+     * Adds a type to the dictionary if it isn't there yet
+     * @param name the jobType
+     * @return the canonical instance of the name
+     */
+    public String register(String name) {
+        Short id = idsByName.get(name);
+        if (id != null) {
+            return namesById.get(id);
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            return registerInTransaction(name);
+        }
+        id = load(name);
+        if (id == null) {
+            id = insert(name);
+            cache(id, name);
+        }
+        return namesById.get(id);
+    }
+
+    /**
+     * @param name the jobType
+     * @return its id, UNKNOWN_ID if the type was never registered
+     */
+    public short idOf(String name) {
+        Short id = idsByName.get(name);
+        if (id == null) {
+            Map<String, Short> pending = pendingTypes(false);
+            id = pending != null ? pending.get(name) : null;
+        }
+        if (id == null) {
+            Long until = missingUntil.get(name);
+            if (until != null && System.nanoTime() - until < 0) {
+                return UNKNOWN_ID;
+            }
+            //maybe added by another instance of the service
+            id = load(name);
+            if (id == null) {
+                rememberMissing(name);
+            }
+        }
+        return id != null ? id : UNKNOWN_ID;
+    }
+
+    /**
+     * @param id a job_type_id of app_job
+     * @return the canonical instance of its name
+     */
+    public String nameOf(short id) {
+        String name = namesById.get(id);
+        if (name == null) {
+            Map<String, Short> pending = pendingTypes(false);
+            if (pending != null) {
+                for (Map.Entry<String, Short> entry : pending.entrySet()) {
+                    if (entry.getValue() == id) {
+                        return entry.getKey();
+                    }
+                }
+            }
+            List<String> names = jdbcTemplate.queryForList("SELECT name FROM job_type WHERE id = ?", String.class, id);
+            if (names.isEmpty()) {
+                throw new IllegalStateException("Unknown job type id " + id);
+            }
+            name = cache(id, names.get(0));
+        }
+        return name;
+    }
+
+    //number of types known to this instance
+    public int size() {
+        return namesById.size();
+    }
+
+    //the insert joins the transaction of the caller, the id is cached only once that commits
+    private String registerInTransaction(String name) {
+        Map<String, Short> pending = pendingTypes(true);
+        if (pending.containsKey(name)) {
+            return name;
+        }
+        //committed by someone else (load caches it)
+        Short id = load(name);
+        if (id != null) {
+            return namesById.get(id);
+        }
+        pending.put(name, insert(name));
+        return name;
+    }
+
+    //types inserted by the current transaction, null when create is false and there are none
+    @SuppressWarnings("unchecked")
+    private Map<String, Short> pendingTypes(boolean create) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return null;
+        }
+        Map<String, Short> pending = (Map<String, Short>) TransactionSynchronizationManager.getResource(this);
+        if (pending == null && create) {
+            Map<String, Short> created = new HashMap<>();
+            TransactionSynchronizationManager.bindResource(this, created);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(JobTypeDictionary.this);
+                    if (status == STATUS_COMMITTED) {
+                        created.forEach((name, id) -> cache(id, name));
+                    }
+                }
+            });
+            pending = created;
+        }
+        return pending;
+    }
+
+    private Short insert(String name) {
+        try {
+            KeyHolder keyHolder = new GeneratedKeyHolder();
+            jdbcTemplate.update(connection -> {
+                PreparedStatement statement = connection.prepareStatement("INSERT INTO job_type (name) VALUES (?)",
+                        Statement.RETURN_GENERATED_KEYS);
+                statement.setString(1, name);
+                return statement;
+            }, keyHolder);
+            return keyHolder.getKey().shortValue();
+        } catch (DuplicateKeyException e) {
+            //another instance inserted it at the same time
+            return load(name);
+        }
+    }
+
+    private Short load(String name) {
+        List<Short> ids = jdbcTemplate.queryForList("SELECT id FROM job_type WHERE name = ?", Short.class, name);
+        if (ids.isEmpty()) {
+            return null;
+        }
+        cache(ids.get(0), name);
+        return ids.get(0);
+    }
+
+    private void rememberMissing(String name) {
+        if (missingUntil.size() >= MAX_MISSES) {
+            missingUntil.clear();
+        }
+        missingUntil.put(name, System.nanoTime() + MISS_TTL.toNanos());
+    }
+
+    //keeps the first instance of the name, returns the canonical one
+    private String cache(short id, String name) {
+        String canonical = namesById.computeIfAbsent(id, key -> name);
+        idsByName.putIfAbsent(canonical, id);
+        missingUntil.remove(name);
+        return canonical;
+    }
+}
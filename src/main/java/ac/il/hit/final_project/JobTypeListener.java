@@ -0,0 +1,24 @@
+package ac.il.hit.final_project;
+
+import jakarta.persistence.PrePersist;
+import jakarta.persistence.PreUpdate;
+import org.springframework.stereotype.Component;
+
+//registers the jobType of a job in the dictionary before the job is written, and swaps in the canonical name
+@Component
+public class JobTypeListener {
+
+    private final JobTypeDictionary dictionary;
+
+    public JobTypeListener(JobTypeDictionary dictionary) {
+        this.dictionary = dictionary;
+    }
+
+    @PrePersist
+    @PreUpdate
+    public void registerJobType(Job job) {
+        if (job.getJobType() != null) {
+            job.setJobType(dictionary.register(job.getJobType()));
+        }
+    }
+}
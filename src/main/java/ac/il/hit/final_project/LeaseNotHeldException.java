@@ -0,0 +1,9 @@
+package ac.il.hit.final_project;
+
+//thrown when a worker renews or releases a lease it doesn't hold (anymore) (409)
+public class LeaseNotHeldException extends JobApiException {
+
+    public LeaseNotHeldException() {
+        super(JobError.LEASE_NOT_HELD);
+    }
+}
@@ -0,0 +1,27 @@
+package ac.il.hit.final_project;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/*
+ * body of POST /jobs/{id}/lease/renew and POST /jobs/{id}/lease/release
+ * workerId     - must be the worker holding the lease
+ * leaseSeconds - renew: new lease length counted from now (1..3600)
+ * status       - release: optional status to set, e.g. the final 200 / 500 of the job.
+ *                without it the job goes back to the status it had when it was claimed
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+public class LeaseRequest {
+    private String workerId;
+    private int leaseSeconds = 60;
+    private Integer status;
+
+    public LeaseRequest(String workerId, int leaseSeconds, Integer status) {
+        this.workerId = workerId;
+        this.leaseSeconds = leaseSeconds;
+        this.status = status;
+    }
+}
@@ -0,0 +1,93 @@
+package ac.il.hit.final_project;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-client rate limiting for /jobs.
+ * A client that runs out of tokens gets 429 + Retry-After, so one runner stuck in a tight loop
+ * can't use up the capacity of everyone else.
+ */
+public class RateLimitFilter extends OncePerRequestFilter implements MeterBinder {
+
+    private static final byte[] TOO_MANY_REQUESTS_BODY =
+            "{\"status\":429,\"error\":\"Too Many Requests\"}".getBytes(StandardCharsets.UTF_8);
+
+    private final Map<RouteClass, ClientRateLimiter> limiters = new EnumMap<>(RouteClass.class);
+    private final Map<RouteClass, LongAdder> rejected = new EnumMap<>(RouteClass.class);
+    private final String apiKeyHeader;
+    private final Set<String> apiKeys;
+    private final long idleTimeoutNanos;
+
+    public RateLimitFilter(RateLimitProperties properties) {
+        for (RouteClass routeClass : RouteClass.values()) {
+            limiters.put(routeClass, properties.rateFor(routeClass).newLimiter(properties.getMaxClients()));
+            rejected.put(routeClass, new LongAdder());
+        }
+        this.apiKeyHeader = properties.getApiKeyHeader();
+        this.apiKeys = Set.copyOf(properties.getApiKeys());
+        this.idleTimeoutNanos = properties.getIdleTimeout().toNanos();
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        RouteClass routeClass = RouteClass.of(request);
+        long waitNanos = limiters.get(routeClass).tryAcquire(clientKey(request));
+        if (waitNanos > 0) {
+            rejected.get(routeClass).increment();
+            long retryAfterSeconds = Math.max(1L, (waitNanos + 999_999_999L) / 1_000_000_000L);
+            response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+            response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds));
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            response.setContentLength(TOO_MANY_REQUESTS_BODY.length);
+            response.getOutputStream().write(TOO_MANY_REQUESTS_BODY);
+            return;
+        }
+        filterChain.doFilter(request, response);
+    }
+
+    //api key if the client sent a known one, its address otherwise (the prefix keeps the two apart)
+    private String clientKey(HttpServletRequest request) {
+        String apiKey = request.getHeader(apiKeyHeader);
+        return apiKey != null && apiKeys.contains(apiKey) ? "key:" + apiKey : "addr:" + request.getRemoteAddr();
+    }
+
+    @Scheduled(fixedDelayString = "${jobs.ratelimit.sweep-interval-ms:60000}")
+    public void evictIdleClients() {
+        for (ClientRateLimiter limiter : limiters.values()) {
+            limiter.evictIdle(idleTimeoutNanos);
+        }
+    }
+
+    //jobs.ratelimit.rejected / clients, tagged by route class
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        limiters.forEach((routeClass, limiter) -> {
+            FunctionCounter.builder("jobs.ratelimit.rejected", rejected.get(routeClass), LongAdder::sum)
+                    .tag("route", routeClass.tag())
+                    .register(registry);
+            Gauge.builder("jobs.ratelimit.clients", limiter, ClientRateLimiter::size)
+                    .tag("route", routeClass.tag())
+                    .register(registry);
+        });
+    }
+}
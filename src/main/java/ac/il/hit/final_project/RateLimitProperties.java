@@ -0,0 +1,66 @@
+package ac.il.hit.final_project;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.Set;
+
+/*
+ * settings for the per-client rate limiting of /jobs (jobs.ratelimit.* in application.properties)
+ * clients are told apart by the api key header if it holds one of apiKeys, by remote address otherwise.
+ * the header itself proves nothing, a client could send a new value with every request to get a new bucket.
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "jobs.ratelimit")
+public class RateLimitProperties {
+
+    private boolean enabled = true;
+
+    private String apiKeyHeader = "X-API-Key";
+
+    //api keys that get a bucket of their own (e.g. runners sharing an address), empty = always by address
+    private Set<String> apiKeys = Set.of();
+
+    //max number of clients tracked per route class, new clients get 429 while it is reached
+    private int maxClients = ClientRateLimiter.DEFAULT_MAX_CLIENTS;
+
+    //buckets of clients that were idle for this long are dropped
+    private Duration idleTimeout = Duration.ofMinutes(10);
+
+    private Rate read = new Rate(100, 200);
+    private Rate write = new Rate(20, 40);
+    private Rate password = new Rate(2, 5);
+    //an export reads the whole table
+    private Rate export = new Rate(0.1, 2);
+
+    public Rate rateFor(RouteClass routeClass) {
+        return switch (routeClass) {
+            case READ -> read;
+            case WRITE -> write;
+            case PASSWORD -> password;
+            case EXPORT -> export;
+        };
+    }
+
+    @Getter
+    @Setter
+    public static class Rate {
+        private double permitsPerSecond;
+        private int burst;
+
+        public Rate() {
+        }
+
+        public Rate(double permitsPerSecond, int burst) {
+            this.permitsPerSecond = permitsPerSecond;
+            this.burst = burst;
+        }
+
+        public ClientRateLimiter newLimiter(int maxClients) {
+            return new ClientRateLimiter(permitsPerSecond, burst, maxClients);
+        }
+    }
+}
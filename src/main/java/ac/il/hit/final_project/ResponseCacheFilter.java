@@ -0,0 +1,101 @@
+package ac.il.hit.final_project;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+import org.springframework.web.util.UriUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Serves the list endpoints from JobResponseCache.
+ * On a hit the stored bytes are written straight to the response, skipping the query,
+ * the JobDTO mapping and jackson. On a miss the request runs normally and the encoded body is stored.
+ */
+public class ResponseCacheFilter extends OncePerRequestFilter {
+
+    private static final String STATUS_PREFIX = "/jobs/status/";
+    private static final String JOB_TYPE_PREFIX = "/jobs/jobType/";
+
+    private final JobResponseCache cache;
+
+    public ResponseCacheFilter(JobResponseCache cache) {
+        this.cache = cache;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        String key = "GET".equals(request.getMethod()) && request.getQueryString() == null ? cacheKey(request) : null;
+        if (key == null) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        JobResponseCache.Entry entry = cache.get(key);
+        if (entry != null) {
+            writeEntry(request, response, entry);
+            return;
+        }
+
+        long fillStamp = cache.stamp();
+        ContentCachingResponseWrapper wrapper = new ContentCachingResponseWrapper(response);
+        try {
+            filterChain.doFilter(request, wrapper);
+            if (wrapper.getStatus() == HttpStatus.OK.value() && wrapper.getContentType() != null) {
+                cache.put(key, wrapper.getContentType(), wrapper.getContentAsByteArray(), fillStamp);
+            }
+        } finally {
+            wrapper.copyBodyToResponse();
+        }
+    }
+
+    private void writeEntry(HttpServletRequest request, HttpServletResponse response, JobResponseCache.Entry entry)
+            throws IOException {
+        byte[] body = entry.getBody();
+        response.setStatus(HttpStatus.OK.value());
+        response.setContentType(entry.getContentType());
+        response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (entry.getGzipBody() != null && acceptsGzip(request)) {
+            body = entry.getGzipBody();
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        response.setContentLength(body.length);
+        response.getOutputStream().write(body);
+    }
+
+    private static boolean acceptsGzip(HttpServletRequest request) {
+        String acceptEncoding = request.getHeader(HttpHeaders.ACCEPT_ENCODING);
+        return acceptEncoding != null && acceptEncoding.contains("gzip");
+    }
+
+    //maps the request path to the cache key of its endpoint, null if it is not a cached endpoint
+    private static String cacheKey(HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        if ("/jobs".equals(path)) {
+            return JobResponseCache.ALL_KEY;
+        }
+        if (path.startsWith(STATUS_PREFIX)) {
+            String segment = path.substring(STATUS_PREFIX.length());
+            try {
+                return JobResponseCache.statusKey(Integer.valueOf(segment));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        if (path.startsWith(JOB_TYPE_PREFIX)) {
+            String segment = path.substring(JOB_TYPE_PREFIX.length());
+            if (segment.isEmpty() || segment.indexOf('/') >= 0) {
+                return null;
+            }
+            return JobResponseCache.jobTypeKey(UriUtils.decode(segment, StandardCharsets.UTF_8));
+        }
+        return null;
+    }
+}
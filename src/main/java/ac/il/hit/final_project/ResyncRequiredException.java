@@ -0,0 +1,9 @@
+package ac.il.hit.final_project;
+
+//thrown when a delta sync watermark is older than the kept tombstones (410), the client has to reload everything
+public class ResyncRequiredException extends JobApiException {
+
+    public ResyncRequiredException() {
+        super(JobError.WATERMARK_TOO_OLD);
+    }
+}
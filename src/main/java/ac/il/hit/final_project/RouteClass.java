@@ -0,0 +1,69 @@
+package ac.il.hit.final_project;
+
+import jakarta.servlet.http.HttpServletRequest;
+
+/*
+ * the kinds of /jobs requests we protect separately.
+ * READ     - cheap lookups (GET and the read-only POST queries)
+ * WRITE    - creating, updating and deleting rows
+ * PASSWORD - calls that run BCrypt, which costs far more cpu than a db round trip
+ * EXPORT   - GET /jobs/export, streams the whole table. it takes as long as the table is big, not as the db is busy,
+ *            so its latency is not sampled by the concurrency limiter (see sampled)
+ */
+public enum RouteClass {
+    READ(true),
+    WRITE(true),
+    PASSWORD(true),
+    EXPORT(false);
+
+    private final boolean sampled;
+
+    RouteClass(boolean sampled) {
+        this.sampled = sampled;
+    }
+
+    //POST endpoints that only read, they carry their query in the body
+    private static final String[] READ_ONLY_POST_SUFFIXES = {"/date-range", "/batch"};
+
+    /**
+     * Classifies an incoming /jobs request
+     * @param request the servlet request
+     * @return the route class the request belongs to
+     */
+    public static RouteClass of(HttpServletRequest request) {
+        String method = request.getMethod();
+        String uri = request.getRequestURI();
+
+        if (uri.endsWith("/password")) {
+            return PASSWORD;
+        }
+        if (uri.endsWith("/export")) {
+            return EXPORT;
+        }
+        if ("GET".equals(method) || "HEAD".equals(method) || "OPTIONS".equals(method)) {
+            return READ;
+        }
+        if ("POST".equals(method)) {
+            for (String suffix : READ_ONLY_POST_SUFFIXES) {
+                if (uri.endsWith(suffix)) {
+                    return READ;
+                }
+            }
+            //creating a job hashes its password, so it is as expensive as a password change
+            if (uri.endsWith("/jobs")) {
+                return PASSWORD;
+            }
+        }
+        return WRITE;
+    }
+
+    //false if the latency of these requests must not move the adaptive concurrency limit
+    public boolean sampled() {
+        return sampled;
+    }
+
+    //lower case name, used for metric tags
+    public String tag() {
+        return name().toLowerCase();
+    }
+}
@@ -0,0 +1,62 @@
+package ac.il.hit.final_project;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+import org.springframework.stereotype.Component;
+
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/*
+ * exports the statistics of the hibernate second level cache regions as metrics:
+ * jobs.l2cache.hits / misses / puts / entries, tagged with the region name.
+ * needs hibernate.generate_statistics=true (application.properties).
+ */
+@Component
+public class SecondLevelCacheMetrics implements MeterBinder {
+
+    private final Statistics statistics;
+
+    public SecondLevelCacheMetrics(EntityManagerFactory entityManagerFactory) {
+        this.statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        bindRegion(registry, Job.CACHE_REGION, statistics::getDomainDataRegionStatistics);
+        bindRegion(registry, Job.QUERY_CACHE_REGION, statistics::getQueryRegionStatistics);
+    }
+
+    private void bindRegion(MeterRegistry registry, String region, Function<String, CacheRegionStatistics> lookup) {
+        FunctionCounter.builder("jobs.l2cache.hits", statistics, s -> value(lookup, region, CacheRegionStatistics::getHitCount))
+                .tag("region", region)
+                .register(registry);
+        FunctionCounter.builder("jobs.l2cache.misses", statistics, s -> value(lookup, region, CacheRegionStatistics::getMissCount))
+                .tag("region", region)
+                .register(registry);
+        FunctionCounter.builder("jobs.l2cache.puts", statistics, s -> value(lookup, region, CacheRegionStatistics::getPutCount))
+                .tag("region", region)
+                .register(registry);
+        Gauge.builder("jobs.l2cache.entries", statistics, s -> value(lookup, region, CacheRegionStatistics::getElementCountInMemory))
+                .tag("region", region)
+                .register(registry);
+    }
+
+    //a region only shows up in the statistics once it was used,
+    //and a provider that can't count its entries reports a negative value
+    private static double value(Function<String, CacheRegionStatistics> lookup, String region,
+                                ToLongFunction<CacheRegionStatistics> counter) {
+        CacheRegionStatistics regionStatistics = lookup.apply(region);
+        if (regionStatistics == null) {
+            return 0;
+        }
+        long value = counter.applyAsLong(regionStatistics);
+        return value < 0 ? Double.NaN : value;
+    }
+}
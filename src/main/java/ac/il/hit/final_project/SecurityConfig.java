@@ -16,6 +16,7 @@ public class SecurityConfig {
                 .authorizeHttpRequests(authorizeRequests ->
                         authorizeRequests
                                 .requestMatchers("/jobs/**").permitAll() // Allow access to /jobs endpoints
+                                .requestMatchers("/actuator/health/**", "/actuator/metrics/**").permitAll() // Allow monitoring
                                 .anyRequest().authenticated() // Require authentication for other endpoints
                 )
                 .csrf().disable(); // Disable CSRF protection if not needed
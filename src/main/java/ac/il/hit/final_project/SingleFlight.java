@@ -0,0 +1,81 @@
+package ac.il.hit.final_project;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces identical concurrent calls.
+ * The first caller for a key runs the loader, every caller that arrives for the same key
+ * while it is still running waits for that result (or exception) instead of running its own copy.
+ * Nothing is cached: once the call finishes the key is forgotten and the next caller loads again.
+ * @param <K> key type, must implement equals/hashCode
+ */
+public class SingleFlight<K> {
+
+    private final ConcurrentHashMap<K, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder executed = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+
+    /**
+     * Runs the loader, or joins a call for the same key that is already running
+     * @param key identifies the call (method + arguments)
+     * @param loader the actual call
+     * @return the result of the loader
+     */
+    @SuppressWarnings("unchecked")
+    public <V> V execute(K key, Supplier<V> loader) {
+        CompletableFuture<Object> mine = new CompletableFuture<>();
+        CompletableFuture<Object> running = inFlight.putIfAbsent(key, mine);
+        if (running != null) {
+            coalesced.increment();
+            return (V) join(running);
+        }
+
+        executed.increment();
+        try {
+            V value = loader.get();
+            mine.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    /**
+     * Makes callers that arrive from now on start a new call instead of joining a running one.
+     * Used after a write commits, so no caller gets a result that was read before the write.
+     */
+    public void forgetAll() {
+        inFlight.clear();
+    }
+
+    public long getExecuted() {
+        return executed.sum();
+    }
+
+    public long getCoalesced() {
+        return coalesced.sum();
+    }
+
+    //rethrows the exception of the leader as is, not wrapped in a CompletionException
+    private static Object join(CompletableFuture<Object> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (cause instanceof Error error) {
+                throw error;
+            }
+            throw e;
+        }
+    }
+}
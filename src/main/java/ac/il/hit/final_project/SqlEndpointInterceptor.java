@@ -0,0 +1,62 @@
+package ac.il.hit.final_project;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+ * opens a SqlStatementRecorder scope for every request to JobController, named after its endpoint
+ * (method and path pattern, e.g. "GET /jobs/{id}"), and records what the request cost the database:
+ * jobs.sql.statements - statements per request
+ * jobs.sql.time       - time per request spent in them
+ * both tagged with the endpoint, so /actuator/metrics/jobs.sql.statements?tag=endpoint:GET%20/jobs/{id} shows one of them
+ */
+public class SqlEndpointInterceptor implements HandlerInterceptor {
+
+    private static final String SCOPE_ATTRIBUTE = SqlEndpointInterceptor.class.getName() + ".scope";
+
+    private final SqlStatementRecorder recorder;
+    private final MeterRegistry registry;
+
+    public SqlEndpointInterceptor(SqlStatementRecorder recorder, MeterRegistry registry) {
+        this.recorder = recorder;
+        this.registry = registry;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        request.setAttribute(SCOPE_ATTRIBUTE, recorder.open(endpoint(request)));
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        if (!(request.getAttribute(SCOPE_ATTRIBUTE) instanceof SqlStatementRecorder.Scope scope)) {
+            return;
+        }
+        request.removeAttribute(SCOPE_ATTRIBUTE);
+        scope.close();
+        DistributionSummary.builder("jobs.sql.statements")
+                .description("sql statements per request")
+                .tag("endpoint", scope.getName())
+                .register(registry)
+                .record(scope.count());
+        Timer.builder("jobs.sql.time")
+                .description("time per request spent in sql statements")
+                .tag("endpoint", scope.getName())
+                .register(registry)
+                .record(scope.elapsedMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    //the pattern, not the path, so every job id counts for the same endpoint
+    private static String endpoint(HttpServletRequest request) {
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        return request.getMethod() + " " + (pattern != null ? pattern : "unmapped");
+    }
+}
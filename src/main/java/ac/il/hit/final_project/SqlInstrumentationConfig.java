@@ -0,0 +1,80 @@
+package ac.il.hit.final_project;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import net.ttddyy.dsproxy.support.ProxyDataSource;
+import net.ttddyy.dsproxy.support.ProxyDataSourceBuilder;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/*
+ * sql instrumentation: the data source is wrapped in a jdbc proxy (datasource-proxy) that hands every statement
+ * to SqlStatementListener, and SqlEndpointInterceptor attributes the statements to the /jobs endpoint that ran them.
+ * jobs.sql.enabled=false leaves the data source as it is.
+ */
+@Configuration
+public class SqlInstrumentationConfig implements WebMvcConfigurer {
+
+    private final SqlStatementRecorder recorder;
+    private final MeterRegistry registry;
+
+    public SqlInstrumentationConfig(SqlStatementRecorder recorder, MeterRegistry registry) {
+        this.recorder = recorder;
+        this.registry = registry;
+    }
+
+    //static, a post processor is created before the other beans (and must not pull them in early)
+    @Bean
+    public static DataSourcePostProcessor sqlInstrumentingDataSourcePostProcessor(ObjectProvider<SqlStatementRecorder> recorder,
+                                                                                  Environment environment) {
+        return new DataSourcePostProcessor(recorder, environment);
+    }
+
+    //wraps every data source, their listeners share one explain thread, which is stopped when the context closes
+    static final class DataSourcePostProcessor implements BeanPostProcessor, DisposableBean {
+
+        private final ObjectProvider<SqlStatementRecorder> recorder;
+        private final Environment environment;
+        //its thread only starts with the first slow query
+        private final ThreadPoolExecutor explainExecutor = SqlStatementListener.newExplainExecutor();
+
+        DataSourcePostProcessor(ObjectProvider<SqlStatementRecorder> recorder, Environment environment) {
+            this.recorder = recorder;
+            this.environment = environment;
+        }
+
+        @Override
+        public Object postProcessAfterInitialization(Object bean, String beanName) {
+            if (!(bean instanceof DataSource dataSource) || bean instanceof ProxyDataSource
+                    || !environment.getProperty("jobs.sql.enabled", Boolean.class, true)) {
+                return bean;
+            }
+            Duration slowQueryThreshold = environment.getProperty("jobs.sql.slow-query-threshold",
+                    Duration.class, Duration.ofMillis(200));
+            return ProxyDataSourceBuilder.create(dataSource)
+                    .name(beanName)
+                    .listener(new SqlStatementListener(recorder, dataSource, slowQueryThreshold, explainExecutor))
+                    .build();
+        }
+
+        //the plans still queued are dropped, the data source is going away
+        @Override
+        public void destroy() {
+            explainExecutor.shutdownNow();
+        }
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry interceptors) {
+        interceptors.addInterceptor(new SqlEndpointInterceptor(recorder, registry)).addPathPatterns("/jobs/**");
+    }
+}
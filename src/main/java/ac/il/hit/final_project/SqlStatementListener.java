@@ -0,0 +1,169 @@
+package ac.il.hit.final_project;
+
+import net.ttddyy.dsproxy.ExecutionInfo;
+import net.ttddyy.dsproxy.QueryInfo;
+import net.ttddyy.dsproxy.listener.QueryExecutionListener;
+import net.ttddyy.dsproxy.proxy.ParameterSetOperation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * gets every statement the application runs through the jdbc proxy (see SqlInstrumentationConfig).
+ * records it in the scopes of SqlStatementRecorder, and logs the ones slower than the threshold
+ * with their bound parameters and, for queries, the plan the database chose.
+ * the plan is asked for on a background thread with its own connection (of the real data source, so the
+ * EXPLAIN itself isn't recorded). while the database is slow only a few of them wait, the rest are logged without a plan.
+ * the listeners of all the wrapped data sources share that thread, SqlInstrumentationConfig stops it with the context.
+ */
+class SqlStatementListener implements QueryExecutionListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(SqlStatementListener.class);
+
+    //parameters are logged, password hashes are not
+    private static final String[] BCRYPT_PREFIXES = {"$2a$", "$2b$", "$2y$"};
+
+    private final ObjectProvider<SqlStatementRecorder> recorderProvider;
+    private volatile SqlStatementRecorder recorder;
+    private final DataSource explainDataSource;
+    private final long slowQueryMillis;
+    private final Executor explainExecutor;
+
+    SqlStatementListener(ObjectProvider<SqlStatementRecorder> recorder, DataSource explainDataSource, Duration slowQueryThreshold,
+                         Executor explainExecutor) {
+        this.recorderProvider = recorder;
+        this.explainDataSource = explainDataSource;
+        this.slowQueryMillis = slowQueryThreshold.toMillis();
+        this.explainExecutor = explainExecutor;
+    }
+
+    //one thread with a short queue, a slow query that doesn't fit (or comes after shutdown) is logged without its plan
+    static ThreadPoolExecutor newExplainExecutor() {
+        return new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(16), runnable -> {
+            Thread thread = new Thread(runnable, "slow-query-explain");
+            thread.setDaemon(true);
+            return thread;
+        }, (runnable, executor) -> ((SlowQuery) runnable).log(null));
+    }
+
+    @Override
+    public void beforeQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+    }
+
+    @Override
+    public void afterQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+        if (queryInfoList.isEmpty()) {
+            return;
+        }
+        String sql = queryInfoList.get(0).getQuery();
+        SqlStatementRecorder statementRecorder = recorder();
+        if (statementRecorder != null && statementRecorder.isRecording()) {
+            statementRecorder.record(sql, parameters(queryInfoList.get(0)), execInfo.getElapsedTime());
+        }
+        if (execInfo.getElapsedTime() >= slowQueryMillis) {
+            String scope = statementRecorder != null ? statementRecorder.currentScopeName() : null;
+            List<Object> parameters = parameters(queryInfoList.get(0));
+            explainExecutor.execute(new SlowQuery(scope != null ? scope : "-", sql, parameters,
+                    execInfo.getElapsedTime(), execInfo.isBatch() ? execInfo.getBatchSize() : 0));
+        }
+    }
+
+    //the recorder is a bean of its own, it is looked up once it is needed (the data source is created before it)
+    private SqlStatementRecorder recorder() {
+        SqlStatementRecorder statementRecorder = recorder;
+        if (statementRecorder == null) {
+            statementRecorder = recorderProvider.getIfAvailable();
+            recorder = statementRecorder;
+        }
+        return statementRecorder;
+    }
+
+    //the values of the first parameter set (the first row of a batch), in index order
+    private static List<Object> parameters(QueryInfo queryInfo) {
+        List<Object> values = new ArrayList<>();
+        if (queryInfo.getParametersList().isEmpty()) {
+            return values;
+        }
+        List<ParameterSetOperation> operations = new ArrayList<>(queryInfo.getParametersList().get(0));
+        operations.sort(Comparator.comparingInt(operation ->
+                operation.getArgs()[0] instanceof Integer index ? index : Integer.MAX_VALUE));
+        for (ParameterSetOperation operation : operations) {
+            Object[] args = operation.getArgs();
+            Object value = "setNull".equals(operation.getMethod().getName()) || args.length < 2 ? null : args[1];
+            values.add(value instanceof String text && isPasswordHash(text) ? "****" : value);
+        }
+        return values;
+    }
+
+    private static boolean isPasswordHash(String text) {
+        for (String prefix : BCRYPT_PREFIXES) {
+            if (text.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private String explain(String sql, List<Object> parameters) {
+        try (Connection connection = explainDataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement("EXPLAIN " + sql)) {
+            for (int i = 0; i < parameters.size(); i++) {
+                statement.setObject(i + 1, parameters.get(i));
+            }
+            StringBuilder plan = new StringBuilder();
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    plan.append(resultSet.getString(1)).append('\n');
+                }
+            }
+            return plan.toString().trim();
+        } catch (SQLException e) {
+            return "(no plan: " + e.getMessage() + ")";
+        }
+    }
+
+    private final class SlowQuery implements Runnable {
+        private final String scope;
+        private final String sql;
+        private final List<Object> parameters;
+        private final long elapsedMillis;
+        private final int batchSize;
+
+        private SlowQuery(String scope, String sql, List<Object> parameters, long elapsedMillis, int batchSize) {
+            this.scope = scope;
+            this.sql = sql;
+            this.parameters = parameters;
+            this.elapsedMillis = elapsedMillis;
+            this.batchSize = batchSize;
+        }
+
+        @Override
+        public void run() {
+            //only queries have a plan, and a masked parameter would give the plan of another query
+            boolean explainable = sql.stripLeading().toLowerCase(Locale.ROOT).startsWith("select")
+                    && !parameters.contains("****");
+            log(explainable ? explain(sql, parameters) : null);
+        }
+
+        void log(String plan) {
+            logger.warn("Slow statement in {} ({} ms{}): {} parameters {}{}", scope, elapsedMillis,
+                    batchSize > 0 ? ", batch of " + batchSize : "", sql, parameters,
+                    plan != null ? "\nplan: " + plan : "");
+        }
+    }
+}
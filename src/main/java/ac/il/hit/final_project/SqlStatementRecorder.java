@@ -0,0 +1,138 @@
+package ac.il.hit.final_project;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * counts the sql statements of a unit of work, e.g. one request to JobController.
+ * a scope is opened on the thread that does the work (SqlEndpointInterceptor opens one per request),
+ * and the jdbc proxy (SqlInstrumentationConfig) records every statement that thread runs into the open scopes.
+ * when a scope closes, a statement that ran many times in it is reported as a possible N+1
+ * (one query for a list, then one more for every element of it).
+ * tests use the same scopes to check how many statements a call may cost (SqlStatementAssertions),
+ * or to get the statements a call really ran, with their parameters (JobQueryPlanTest explains them).
+ */
+@Component
+public class SqlStatementRecorder {
+
+    private static final Logger logger = LoggerFactory.getLogger(SqlStatementRecorder.class);
+
+    //scopes can be nested (a test around a request), a statement counts in all of them
+    private final ThreadLocal<Deque<Scope>> scopes = ThreadLocal.withInitial(ArrayDeque::new);
+    private final int nPlusOneThreshold;
+
+    public SqlStatementRecorder(@Value("${jobs.sql.n-plus-one-threshold:10}") int nPlusOneThreshold) {
+        this.nPlusOneThreshold = nPlusOneThreshold;
+    }
+
+    /**
+     * Starts counting the statements of the current thread, close the scope (try-with-resources) when done
+     * @param name what is counted, e.g. "GET /jobs/{id}"
+     * @return the open scope
+     */
+    public Scope open(String name) {
+        Scope scope = new Scope(name);
+        scopes.get().push(scope);
+        return scope;
+    }
+
+    //name of the innermost open scope of the current thread, null if there is none (e.g. a scheduled task)
+    public String currentScopeName() {
+        Scope scope = scopes.get().peek();
+        return scope != null ? scope.name : null;
+    }
+
+    //whether the current thread has an open scope, the jdbc proxy only collects the parameters then
+    boolean isRecording() {
+        return !scopes.get().isEmpty();
+    }
+
+    void record(String sql, long elapsedMillis) {
+        record(sql, List.of(), elapsedMillis);
+    }
+
+    //called by the jdbc proxy after every statement (a jdbc batch is one statement, it is one round trip)
+    void record(String sql, List<Object> parameters, long elapsedMillis) {
+        Deque<Scope> open = scopes.get();
+        if (open.isEmpty()) {
+            return;
+        }
+        Statement statement = new Statement(sql, parameters, elapsedMillis);
+        for (Scope scope : open) {
+            scope.statements.add(statement);
+        }
+    }
+
+    private void close(Scope scope) {
+        Deque<Scope> open = scopes.get();
+        open.remove(scope);
+        if (open.isEmpty()) {
+            scopes.remove();
+        }
+        scope.repeatedStatements(nPlusOneThreshold).forEach((sql, times) ->
+                logger.warn("Possible N+1 in {}: the same statement ran {} times: {}", scope.name, times, sql));
+    }
+
+    //parameters are the bound values in index order (the first row of a batch), password hashes masked
+    public record Statement(String sql, List<Object> parameters, long elapsedMillis) {
+    }
+
+    public final class Scope implements AutoCloseable {
+        private final String name;
+        private final List<Statement> statements = new ArrayList<>();
+        private boolean closed;
+
+        private Scope(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int count() {
+            return statements.size();
+        }
+
+        //time spent in the database, the sum of the statements
+        public long elapsedMillis() {
+            long elapsed = 0;
+            for (Statement statement : statements) {
+                elapsed += statement.elapsedMillis();
+            }
+            return elapsed;
+        }
+
+        public List<Statement> getStatements() {
+            return Collections.unmodifiableList(statements);
+        }
+
+        //sql strings that ran at least threshold times, with how often they ran
+        public Map<String, Integer> repeatedStatements(int threshold) {
+            Map<String, Integer> times = new LinkedHashMap<>();
+            for (Statement statement : statements) {
+                times.merge(statement.sql(), 1, Integer::sum);
+            }
+            times.values().removeIf(count -> count < threshold);
+            return times;
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                SqlStatementRecorder.this.close(this);
+            }
+        }
+    }
+}
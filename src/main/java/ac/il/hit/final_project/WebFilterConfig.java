@@ -0,0 +1,70 @@
+package ac.il.hit.final_project;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+
+/*
+ * registers the servlet filters that sit in front of JobController.
+ * they run before the spring security chain (order -100) so rejected requests cost as little as possible.
+ */
+@Configuration
+@EnableConfigurationProperties({RateLimitProperties.class, ConcurrencyLimitProperties.class})
+public class WebFilterConfig {
+
+    private static final String JOBS_URL_PATTERN = "/jobs/*";
+
+    //cheapest rejection first: rate limit, then cached responses, then concurrency limit
+    //(a cache hit doesn't need a concurrency slot)
+    static final int RATE_LIMIT_ORDER = Ordered.HIGHEST_PRECEDENCE + 10;
+    static final int RESPONSE_CACHE_ORDER = Ordered.HIGHEST_PRECEDENCE + 20;
+    static final int CONCURRENCY_LIMIT_ORDER = Ordered.HIGHEST_PRECEDENCE + 30;
+
+    @Bean
+    public RateLimitFilter rateLimitFilter(RateLimitProperties properties) {
+        return new RateLimitFilter(properties);
+    }
+
+    @Bean
+    public FilterRegistrationBean<RateLimitFilter> rateLimitFilterRegistration(
+            RateLimitFilter filter, RateLimitProperties properties) {
+        FilterRegistrationBean<RateLimitFilter> registration = new FilterRegistrationBean<>(filter);
+        registration.addUrlPatterns(JOBS_URL_PATTERN);
+        registration.setOrder(RATE_LIMIT_ORDER);
+        registration.setEnabled(properties.isEnabled());
+        return registration;
+    }
+
+    @Bean
+    public ResponseCacheFilter responseCacheFilter(JobResponseCache cache) {
+        return new ResponseCacheFilter(cache);
+    }
+
+    @Bean
+    public FilterRegistrationBean<ResponseCacheFilter> responseCacheFilterRegistration(
+            ResponseCacheFilter filter, @Value("${jobs.response-cache.enabled:true}") boolean enabled) {
+        FilterRegistrationBean<ResponseCacheFilter> registration = new FilterRegistrationBean<>(filter);
+        registration.addUrlPatterns(JOBS_URL_PATTERN);
+        registration.setOrder(RESPONSE_CACHE_ORDER);
+        registration.setEnabled(enabled);
+        return registration;
+    }
+
+    @Bean
+    public ConcurrencyLimitFilter concurrencyLimitFilter(ConcurrencyLimitProperties properties) {
+        return new ConcurrencyLimitFilter(properties);
+    }
+
+    @Bean
+    public FilterRegistrationBean<ConcurrencyLimitFilter> concurrencyLimitFilterRegistration(
+            ConcurrencyLimitFilter filter, ConcurrencyLimitProperties properties) {
+        FilterRegistrationBean<ConcurrencyLimitFilter> registration = new FilterRegistrationBean<>(filter);
+        registration.addUrlPatterns(JOBS_URL_PATTERN);
+        registration.setOrder(CONCURRENCY_LIMIT_ORDER);
+        registration.setEnabled(properties.isEnabled());
+        return registration;
+    }
+}
@@ -0,0 +1,117 @@
+package ac.il.hit.final_project;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the AIMD limiter used by ConcurrencyLimitFilter.
+ * No spring context is needed, the limiter is a plain object.
+ */
+public class AdaptiveConcurrencyLimiterTest {
+
+    private static final long FAST = 1_000_000L;   // 1ms
+    private static final long SLOW = 50_000_000L;  // 50ms
+
+    @Test
+    void testRejectsOverLimit() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(2, 1, 10, 0.5, 2.0);
+
+        assertTrue(limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire());
+        // the third request is over the limit and gets shed
+        assertFalse(limiter.tryAcquire());
+
+        assertEquals(2, limiter.getInFlight());
+        assertEquals(1, limiter.getRejected());
+    }
+
+    @Test
+    void testLimitGrowsWhileLatencyIsStable() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(2, 1, 10, 0.5, 2.0);
+
+        // keep the limit saturated with fast requests
+        for (int i = 0; i < 20; i++) {
+            int acquired = 0;
+            while (limiter.tryAcquire()) {
+                acquired++;
+            }
+            for (int j = 0; j < acquired; j++) {
+                limiter.release(FAST, false);
+            }
+        }
+
+        assertEquals(10, limiter.getLimit());
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    void testLimitBacksOffOnSlowRequests() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(8, 1, 10, 0.5, 2.0);
+
+        // establish a fast baseline
+        limiter.tryAcquire();
+        limiter.release(FAST, false);
+        int before = limiter.getLimit();
+
+        // latency degrades far over baseline * tolerance
+        limiter.tryAcquire();
+        limiter.release(SLOW, false);
+
+        assertEquals(before / 2, limiter.getLimit());
+    }
+
+    @Test
+    void testSlowBurstBacksOffOncePerRoundTrip() {
+        long[] now = {0};
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(16, 1, 20, 0.5, 2.0, () -> now[0]);
+
+        limiter.tryAcquire();
+        now[0] += FAST;
+        limiter.release(FAST, false);
+
+        // 8 requests run into the same overload and all finish slow at about the same time
+        for (int i = 0; i < 8; i++) {
+            limiter.tryAcquire();
+        }
+        now[0] += SLOW;
+        for (int i = 0; i < 8; i++) {
+            limiter.release(SLOW, false);
+        }
+        // they all started before the first decrease, it counts once (16 -> 8, not down to 1)
+        assertEquals(8, limiter.getLimit());
+
+        // a request started after the decrease is still slow, the limit goes down again
+        limiter.tryAcquire();
+        now[0] += SLOW;
+        limiter.release(SLOW, false);
+        assertEquals(4, limiter.getLimit());
+    }
+
+    @Test
+    void testReleaseWithoutSampleKeepsLimit() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(2, 1, 10, 0.5, 2.0);
+
+        limiter.tryAcquire();
+        limiter.release(FAST, false);
+        int before = limiter.getLimit();
+        // a long export, not sampled
+        limiter.tryAcquire();
+        limiter.release();
+
+        assertEquals(before, limiter.getLimit());
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    void testLimitBacksOffOnFailuresButNotUnderMin() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(4, 2, 10, 0.5, 2.0);
+
+        for (int i = 0; i < 10; i++) {
+            limiter.tryAcquire();
+            limiter.release(FAST, true);
+        }
+
+        assertEquals(2, limiter.getLimit());
+    }
+}
@@ -1,21 +1,45 @@
 package ac.il.hit.final_project;
 
+import jakarta.persistence.EntityManagerFactory;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.web.MockHttpServletResponse;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.server.ResponseStatusException;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
+import static ac.il.hit.final_project.SqlStatementAssertions.assertMaxStatements;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
 import static org.junit.jupiter.api.Assertions.*;
 
 /**
@@ -38,6 +62,49 @@ public class CICDJobControllerTest {
     @Autowired
     private JobRepository jobRepository;
 
+    @Autowired
+    private JobLeaseService jobLeaseService;
+
+    @Autowired
+    private JobStatsController jobStatsController;
+
+    @Autowired
+    private JobStatusHistory jobStatusHistory;
+
+    @Autowired
+    private JobStatusEventRepository jobStatusEventRepository;
+
+    @Autowired
+    private JobDurationSketches jobDurationSketches;
+
+    @Autowired
+    private JobDurationSketchRepository jobDurationSketchRepository;
+
+    @Autowired
+    private JobTombstoneRepository jobTombstoneRepository;
+
+    @Autowired
+    private JobTypeDictionary jobTypeDictionary;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    //counts the sql statements of a call, see assertMaxStatements
+    @Autowired
+    private SqlStatementRecorder sqlStatementRecorder;
+
+    @Autowired
+    private JobExport jobExport;
+
+    @TempDir
+    Path tempDir;
+
     @BeforeEach
     void setUp() {
         // Clean the database before each test to ensure a consistent state.
@@ -88,8 +155,8 @@ public class CICDJobControllerTest {
         jobService.saveJob(job1);
         jobService.saveJob(job2);
 
-        // And retrieved via the controller.
-        ResponseEntity<List<JobDTO>> response = jobController.getAllJobs();
+        // And retrieved via the controller, with one query.
+        ResponseEntity<List<JobDTO>> response = assertMaxStatements(sqlStatementRecorder, 1, () -> jobController.getAllJobs());
 
         // Then the response status should be 200 OK.
         assertEquals(HttpStatus.OK, response.getStatusCode());
@@ -110,8 +177,8 @@ public class CICDJobControllerTest {
         // When the job is saved via the service.
         Job savedJob = jobService.saveJob(job);
 
-        // And retrieved by its ID via the controller.
-        ResponseEntity<JobDTO> response = jobController.getJobById(savedJob.getId());
+        // And retrieved by its ID via the controller (from the second level cache, at most one query).
+        ResponseEntity<JobDTO> response = assertMaxStatements(sqlStatementRecorder, 1, () -> jobController.getJobById(savedJob.getId()));
 
         // Then the response status should be 200 OK.
         assertEquals(HttpStatus.OK, response.getStatusCode());
@@ -123,6 +190,82 @@ public class CICDJobControllerTest {
         assertEquals(savedJob.getId(), response.getBody().getJobId());
     }
 
+    /*
+     * testPatchJob: Ensures that a PATCH changes only the fields it sends and returns 404 for a missing job.
+     */
+    @Test
+    void testPatchJob() {
+        Job savedJob = jobService.saveJob(new Job("Patch1", "Type1", 102, "secret"));
+        String passwordHash = jobRepository.findById(savedJob.getId()).get().getPassword();
+
+        // one conditional UPDATE, no read before it whether the job is cached or not
+        entityManagerFactory.getCache().evict(Job.class, savedJob.getId());
+        ResponseEntity<JobDTO> response = assertMaxStatements(sqlStatementRecorder, 1,
+                () -> jobController.patchJob(savedJob.getId(), new JobPatchRequest("Patch1 renamed", null, null)));
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        Job patchedJob = jobRepository.findById(savedJob.getId()).get();
+        assertEquals("Patch1 renamed", patchedJob.getJobName());
+        assertEquals("Type1", patchedJob.getJobType());
+        assertEquals(102, patchedJob.getStatus());
+        assertEquals(passwordHash, patchedJob.getPassword());
+        assertFalse(patchedJob.getUpdatedAt().isBefore(savedJob.getUpdatedAt()));
+        assertEquals(savedJob.getVersion() + 1, patchedJob.getVersion());
+        assertEquals("Patch1 renamed", response.getBody().getJobName());
+
+        // a status patch is a status transition like any other
+        jobController.patchJob(savedJob.getId(), new JobPatchRequest(null, null, 200));
+        assertEquals(200, jobRepository.findById(savedJob.getId()).get().getStatus());
+        assertEquals(1, jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM job_status_event WHERE job_id = ? AND from_status = 102 AND to_status = 200",
+                Integer.class, savedJob.getId()));
+
+        ResponseStatusException illegal = assertThrows(ResponseStatusException.class, () -> {
+            jobController.patchJob(savedJob.getId(), new JobPatchRequest(null, null, 99));
+        });
+        assertEquals(HttpStatus.BAD_REQUEST, illegal.getStatusCode());
+        ResponseStatusException notFound = assertThrows(ResponseStatusException.class, () -> {
+            jobController.patchJob(savedJob.getId() + 1000, new JobPatchRequest("nobody", null, null));
+        });
+        assertEquals(HttpStatus.NOT_FOUND, notFound.getStatusCode());
+    }
+
+    /*
+     * testGetJobsBatch: Ensures that a batch lookup returns the jobs in the requested order
+     * and lists the ids that don't exist.
+     */
+    @Test
+    void testGetJobsBatch() {
+        Job job1 = jobService.saveJob(new Job("Batch1", "Type1", 200));
+        Job job2 = jobService.saveJob(new Job("Batch2", "Type1", 200));
+        Job job3 = jobService.saveJob(new Job("Batch3", "Type1", 200));
+        long missingId = job3.getId() + 1000;
+
+        // job2 is in the second level cache already, the others are loaded with one IN (...) query
+        jobService.findJobById(job2.getId());
+        ResponseEntity<JobBatchDTO> response = assertMaxStatements(sqlStatementRecorder, 1, () -> jobController.getJobsByIds(
+                List.of(job3.getId(), missingId, job1.getId(), job2.getId(), job3.getId())));
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertThat(response.getBody().getJobs()).extracting(JobDTO::getJobName).containsExactly("Batch3", "Batch1", "Batch2");
+        assertThat(response.getBody().getMissing()).containsExactly(missingId);
+
+        // the POST variant answers the same
+        assertThat(jobController.postJobsByIds(List.of(job1.getId(), job2.getId())).getBody().getJobs())
+                .extracting(JobDTO::getJobName).containsExactly("Batch1", "Batch2");
+
+        ResponseStatusException thrown = assertThrows(ResponseStatusException.class, () -> {
+            jobController.getJobsByIds(List.of());
+        });
+        assertEquals(HttpStatus.BAD_REQUEST, thrown.getStatusCode());
+
+        // a null id in the body (POST [1, null]) is rejected too
+        thrown = assertThrows(ResponseStatusException.class, () -> {
+            jobController.postJobsByIds(Arrays.asList(job1.getId(), null));
+        });
+        assertEquals(HttpStatus.BAD_REQUEST, thrown.getStatusCode());
+    }
+
     /*
      *testUpdateJob: Validates that updating a job returns a 204 NO CONTENT status and
      * the job's details are correctly updated in the database.
@@ -213,7 +356,7 @@ public class CICDJobControllerTest {
         jobService.saveJob(job3);
 
         // And retrieved by status via the controller.
-        ResponseEntity<List<JobDTO>> response = jobController.getJobByStatus(200);
+        ResponseEntity<List<JobDTO>> response = assertMaxStatements(sqlStatementRecorder, 1, () -> jobController.getJobByStatus(200));
 
         // Then the response status should be 200 OK.
         assertEquals(HttpStatus.OK, response.getStatusCode());
@@ -336,6 +479,455 @@ public class CICDJobControllerTest {
         assertTrue(new BCryptPasswordEncoder().matches("newPassword", updatedJob.getPassword()));
     }
 
+    /*
+     * testSearchJobs: Ensures that searching by a name fragment returns only matching jobs,
+     * prefix matches first.
+     */
+    @Test
+    void testSearchJobs() {
+        jobService.saveJob(new Job("nightly build feature-login #42", "Type1", 200));
+        jobService.saveJob(new Job("feature-login deploy", "Type1", 200));
+        jobService.saveJob(new Job("nightly build main #43", "Type1", 200));
+
+        // the index finds the ids, one IN (...) query loads the jobs
+        ResponseEntity<List<JobDTO>> response = assertMaxStatements(sqlStatementRecorder, 1, () -> jobController.searchJobs("Feature-Login", 10));
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertThat(response.getBody()).extracting(JobDTO::getJobName)
+                .containsExactly("feature-login deploy", "nightly build feature-login #42");
+
+        // a limit over the maximum is rejected
+        ResponseStatusException thrown = assertThrows(ResponseStatusException.class, () -> {
+            jobController.searchJobs("build", 1000);
+        });
+        assertEquals(HttpStatus.BAD_REQUEST, thrown.getStatusCode());
+    }
+
+    /*
+     * testQueryJobs: Ensures that combined criteria are applied together in one query,
+     * with the requested sort and limit.
+     */
+    @Test
+    void testQueryJobs() {
+        jobService.saveJob(new Job("Job1", "error", 500));
+        jobService.saveJob(new Job("Job2", "error", 404));
+        jobService.saveJob(new Job("Job3", "regular", 500));
+        jobService.saveJob(new Job("Job4", "error", 200));
+
+        JobQuery jobQuery = new JobQuery();
+        jobQuery.setStatus(List.of(500, 404));
+        jobQuery.setJobType(List.of("error"));
+        jobQuery.setCreatedFrom(LocalDateTime.now().minusHours(1));
+        jobQuery.setSort("jobName,desc");
+
+        ResponseEntity<List<JobDTO>> response = assertMaxStatements(sqlStatementRecorder, 1, () -> jobController.queryJobs(jobQuery));
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertThat(response.getBody()).extracting(JobDTO::getJobName).containsExactly("Job2", "Job1");
+
+        // the limit cuts the sorted result
+        jobQuery.setLimit(1);
+        assertThat(jobController.queryJobs(jobQuery).getBody()).extracting(JobDTO::getJobName).containsExactly("Job2");
+
+        // unknown sort fields are rejected
+        jobQuery.setSort("password");
+        ResponseStatusException thrown = assertThrows(ResponseStatusException.class, () -> {
+            jobController.queryJobs(jobQuery);
+        });
+        assertEquals(HttpStatus.BAD_REQUEST, thrown.getStatusCode());
+    }
+
+    /*
+     * testClaimJobs: Ensures that concurrent workers claim disjoint jobs, and that only the
+     * lease owner can renew or release a lease.
+     */
+    @Test
+    void testClaimJobs() {
+        jobService.saveJob(new Job("Build1", "build", 202));
+        jobService.saveJob(new Job("Build2", "build", 202));
+        jobService.saveJob(new Job("Build3", "build", 202));
+        jobService.saveJob(new Job("Deploy1", "deploy", 202));
+
+        // worker-1 claims two builds and moves them to "processing"
+        ResponseEntity<List<JobLeaseDTO>> first = jobController.claimJobs(
+                new ClaimRequest("worker-1", 202, "build", 2, 60, 102));
+        assertEquals(HttpStatus.OK, first.getStatusCode());
+        assertThat(first.getBody()).hasSize(2);
+        assertThat(first.getBody()).allSatisfy(lease -> {
+            assertEquals(102, lease.getStatus());
+            assertEquals("worker-1", lease.getLeaseOwner());
+            assertNotNull(lease.getLeaseExpiresAt());
+        });
+
+        // worker-2 only gets the build that is left
+        List<JobLeaseDTO> second = jobController.claimJobs(new ClaimRequest("worker-2", 202, "build", 5, 60, 102)).getBody();
+        assertThat(second).hasSize(1);
+        assertThat(second.get(0).getJobName()).isEqualTo("Build3");
+
+        // worker-2 can't renew a lease of worker-1
+        Long claimedByFirst = first.getBody().get(0).getJobId();
+        ResponseStatusException thrown = assertThrows(ResponseStatusException.class, () -> {
+            jobController.renewLease(claimedByFirst, new LeaseRequest("worker-2", 60, null));
+        });
+        assertEquals(HttpStatus.CONFLICT, thrown.getStatusCode());
+
+        // worker-1 renews and then releases it with the final status
+        assertEquals(HttpStatus.OK, jobController.renewLease(claimedByFirst, new LeaseRequest("worker-1", 120, null)).getStatusCode());
+        ResponseEntity<JobDTO> released = jobController.releaseLease(claimedByFirst, new LeaseRequest("worker-1", 60, 200));
+        assertEquals(200, released.getBody().getStatus());
+
+        Job releasedJob = jobService.findJobById(claimedByFirst).get();
+        assertNull(releasedJob.getLeaseOwner());
+        assertNull(releasedJob.getLeaseExpiresAt());
+    }
+
+    /*
+     * testConcurrentClaims: Ensures that workers claiming at the same time never get the same job,
+     * and that every job ends up leased to the worker that got it.
+     */
+    @Test
+    void testConcurrentClaims() throws Exception {
+        int jobs = 40;
+        int workers = 8;
+        for (int i = 0; i < jobs; i++) {
+            jobService.saveJob(new Job("Concurrent" + i, "build", 202));
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        CountDownLatch go = new CountDownLatch(1);
+        List<Future<List<JobLeaseDTO>>> claims = new ArrayList<>();
+        try {
+            for (int w = 0; w < workers; w++) {
+                String workerId = "worker-" + w;
+                claims.add(pool.submit(() -> {
+                    go.await();
+                    List<JobLeaseDTO> leases = new ArrayList<>();
+                    // claim until nothing is left
+                    List<JobLeaseDTO> claimed;
+                    do {
+                        claimed = jobController.claimJobs(new ClaimRequest(workerId, 202, "build", 3, 60, 102)).getBody();
+                        leases.addAll(claimed);
+                    } while (!claimed.isEmpty());
+                    return leases;
+                }));
+            }
+            go.countDown();
+
+            Map<Long, String> owners = new HashMap<>();
+            for (Future<List<JobLeaseDTO>> claim : claims) {
+                for (JobLeaseDTO lease : claim.get(30, TimeUnit.SECONDS)) {
+                    assertNull(owners.put(lease.getJobId(), lease.getLeaseOwner()), "claimed twice: " + lease.getJobId());
+                }
+            }
+            assertEquals(jobs, owners.size());
+            for (Job job : jobRepository.findAll()) {
+                assertEquals(owners.get(job.getId()), job.getLeaseOwner());
+                assertEquals(102, job.getStatus());
+                assertEquals(202, job.getLeasedFromStatus());
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /*
+     * testClaimEvictsOnlyClaimedJobs: Ensures that a claim is one read of the candidates and one UPDATE,
+     * and that the jobs it didn't claim stay in the second level cache.
+     */
+    @Test
+    void testClaimEvictsOnlyClaimedJobs() {
+        Job first = jobService.saveJob(new Job("Build1", "build", 202));
+        Job second = jobService.saveJob(new Job("Build2", "build", 202));
+        Job other = jobService.saveJob(new Job("Deploy1", "deploy", 202));
+        jobService.findJobById(other.getId());
+        assertTrue(entityManagerFactory.getCache().contains(Job.class, other.getId()));
+
+        List<JobLeaseDTO> claimed = assertMaxStatements(sqlStatementRecorder, 2,
+                () -> jobController.claimJobs(new ClaimRequest("worker-1", 202, "build", 5, 60, null))).getBody();
+
+        assertThat(claimed).extracting(JobLeaseDTO::getJobId).containsExactly(first.getId(), second.getId());
+        assertTrue(entityManagerFactory.getCache().contains(Job.class, other.getId()));
+        assertFalse(entityManagerFactory.getCache().contains(Job.class, first.getId()));
+        assertEquals("worker-1", jobService.findJobById(first.getId()).get().getLeaseOwner());
+    }
+
+    /*
+     * testReapExpiredLeases: Ensures that a job whose lease expired goes back to the status
+     * it had before it was claimed.
+     */
+    @Test
+    void testReapExpiredLeases() {
+        Job savedJob = jobService.saveJob(new Job("Build1", "build", 202));
+        jobController.claimJobs(new ClaimRequest("worker-1", 202, null, 1, 60, 102));
+        assertEquals(102, jobService.findJobById(savedJob.getId()).get().getStatus());
+
+        // two hours later the lease is long expired
+        assertThat(jobLeaseService.reapExpiredLeases(LocalDateTime.now().plusHours(2))).isGreaterThanOrEqualTo(1);
+
+        Job reapedJob = jobService.findJobById(savedJob.getId()).get();
+        assertEquals(202, reapedJob.getStatus());
+        assertNull(reapedJob.getLeaseOwner());
+    }
+
+    /*
+     * testTransitionStats: Ensures that every status change is logged and shows up in the
+     * per minute and per hour rollups read by GET /jobs/stats/transitions.
+     */
+    @Test
+    void testTransitionStats() {
+        LocalDateTime start = LocalDateTime.now();
+        Job savedJob = jobService.saveJob(new Job("History1", "history", 202));
+        jobService.updateJobStatus(savedJob.getId(), 102);
+        jobService.updateJobStatus(savedJob.getId(), 200);
+        //a password change is not a status transition
+        jobService.updateJobPassword(savedJob.getId(), "", "newPassword");
+
+        // roll up as if the minutes of the test were long over
+        LocalDateTime later = start.plusHours(2);
+        jobStatusHistory.rollUp(later);
+
+        List<JobStatusRollup> minutes = jobStatsController.getTransitions("minute", start.minusMinutes(1), later,
+                null, null, "history").getBody();
+        assertThat(minutes).extracting(JobStatusRollup::getFromStatus, JobStatusRollup::getToStatus, JobStatusRollup::getTransitions)
+                .containsExactlyInAnyOrder(tuple(JobStatusEvent.NO_STATUS, 202, 1L), tuple(202, 102, 1L), tuple(102, 200, 1L));
+
+        List<JobStatusRollup> hours = jobStatsController.getTransitions("hour", start.minusHours(1), later,
+                null, 200, "history").getBody();
+        assertThat(hours).extracting(JobStatusRollup::getFromStatus, JobStatusRollup::getTransitions)
+                .containsExactly(tuple(102, 1L));
+
+        // 30 days of minutes are too many buckets for one request
+        ResponseStatusException thrown = assertThrows(ResponseStatusException.class, () -> {
+            jobStatsController.getTransitions("minute", start.minusDays(30), start, null, null, null);
+        });
+        assertEquals(HttpStatus.BAD_REQUEST, thrown.getStatusCode());
+    }
+
+    /*
+     * testLateTransitionIsRolledUp: Ensures that an event of a transaction that committed after its minute was
+     * rolled up is counted by the next rollup, and that counting the minute again doesn't count anything twice.
+     */
+    @Test
+    void testLateTransitionIsRolledUp() {
+        LocalDateTime start = LocalDateTime.now();
+        Job savedJob = jobService.saveJob(new Job("Late1", "late", 202));
+        jobStatusHistory.rollUp(start.plusMinutes(2));
+
+        // the minute of start is rolled up already when this commits
+        jobStatusEventRepository.save(new JobStatusEvent(savedJob.getId(), 202, 200, "late", start));
+        jobStatusHistory.rollUp(start.plusMinutes(3));
+        jobStatusHistory.rollUp(start.plusMinutes(4));
+
+        List<JobStatusRollup> minutes = jobStatsController.getTransitions("minute", start.minusMinutes(1), start.plusMinutes(5),
+                null, null, "late").getBody();
+        assertThat(minutes).extracting(JobStatusRollup::getFromStatus, JobStatusRollup::getToStatus, JobStatusRollup::getTransitions)
+                .containsExactlyInAnyOrder(tuple(JobStatusEvent.NO_STATUS, 202, 1L), tuple(202, 200, 1L));
+
+        jobStatusHistory.rollUp(start.plusHours(2));
+        List<JobStatusRollup> hours = jobStatsController.getTransitions("hour", start.minusHours(1), start.plusHours(2),
+                202, null, "late").getBody();
+        assertThat(hours).extracting(JobStatusRollup::getToStatus, JobStatusRollup::getTransitions)
+                .containsExactly(tuple(200, 1L));
+    }
+
+    /*
+     * testDurationStats: Ensures that a job reaching a terminal status shows up in GET /jobs/stats/durations,
+     * and that its window is saved to the database.
+     */
+    @Test
+    void testDurationStats() {
+        LocalDateTime start = LocalDateTime.now();
+        Job savedJob = jobService.saveJob(new Job("Duration1", "durations", 102));
+        jobService.updateJobStatus(savedJob.getId(), 200);
+
+        List<JobDurationStats> stats = jobStatsController.getDurations(start.minusHours(1), start.plusHours(1), "durations").getBody();
+        assertThat(stats).hasSize(1);
+        assertEquals("durations", stats.get(0).getJobType());
+        assertEquals(1, stats.get(0).getCount());
+
+        jobDurationSketches.persist();
+        assertThat(jobDurationSketchRepository.findWindows(start.minusHours(1), start.plusHours(1), "durations")).isNotEmpty();
+    }
+
+    /*
+     * testGetChanges: Ensures that a delta sync returns only the jobs changed after the watermark,
+     * and tombstones of the deleted ones.
+     */
+    @Test
+    void testGetChanges() {
+        // tombstones of other tests would be in the lag window too
+        jobTombstoneRepository.deleteAll();
+        LocalDateTime start = LocalDateTime.now();
+        Job job1 = jobService.saveJob(new Job("Sync1", "Type1", 200));
+        Job job2 = jobService.saveJob(new Job("Sync2", "Type1", 200));
+
+        JobChangesDTO first = jobController.getChanges(start, 0, 1000).getBody();
+        assertThat(first.getChanged()).extracting(JobDTO::getJobName).containsExactly("Sync1", "Sync2");
+        assertThat(first.getDeleted()).isEmpty();
+        // the watermark stays behind the commits that may still be in flight, even behind since
+        assertFalse(first.getWatermark().isAfter(LocalDateTime.now().minusSeconds(1)));
+        assertTrue(first.getWatermark().isBefore(start));
+
+        jobService.updateJob(job1.getId(), new Job("Sync1 renamed", "Type1", 500));
+        jobService.deleteJob(job2.getId());
+
+        JobChangesDTO second = jobController.getChanges(first.getWatermark(), first.getWatermarkId(), 1000).getBody();
+        assertThat(second.getChanged()).extracting(JobDTO::getJobName).containsExactly("Sync1 renamed");
+        assertThat(second.getDeleted()).containsExactly(job2.getId());
+
+        // tombstones that old are gone, the client has to reload everything
+        ResponseStatusException thrown = assertThrows(ResponseStatusException.class, () -> {
+            jobController.getChanges(start.minusDays(30), 0, 1000);
+        });
+        assertEquals(HttpStatus.GONE, thrown.getStatusCode());
+    }
+
+    /*
+     * testExportJobs: Ensures that the columnar and ndjson exports contain every job,
+     * and that a dump replaces the oldest files.
+     */
+    @Test
+    void testExportJobs() throws Exception {
+        Job job1 = jobService.saveJob(new Job("Export1", "build", 200));
+        Job job2 = jobService.saveJob(new Job("Export2", "deploy", 500));
+
+        // one query, streamed
+        MockHttpServletResponse columnar = new MockHttpServletResponse();
+        assertMaxStatements(sqlStatementRecorder, 1, () -> {
+            try {
+                jobController.exportJobs("columnar", columnar);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        assertEquals("application/vnd.jobs.columnar", columnar.getContentType());
+        List<JobExportRow> rows = JobColumnarReader.read(columnar.getContentAsByteArray());
+        assertThat(rows).extracting(JobExportRow::getId, JobExportRow::getJobName, JobExportRow::getStatus, JobExportRow::getJobType)
+                .containsExactly(tuple(job1.getId(), "Export1", 200, "build"), tuple(job2.getId(), "Export2", 500, "deploy"));
+        assertNotNull(rows.get(0).getCreatedAt());
+
+        MockHttpServletResponse ndjson = new MockHttpServletResponse();
+        jobController.exportJobs("ndjson", ndjson);
+        assertThat(ndjson.getContentAsString(StandardCharsets.UTF_8).split("\n"))
+                .hasSize(2).allMatch(line -> line.startsWith("{\"id\":"));
+
+        ResponseStatusException thrown = assertThrows(ResponseStatusException.class, () -> {
+            jobController.exportJobs("xml", new MockHttpServletResponse());
+        });
+        assertEquals(HttpStatus.BAD_REQUEST, thrown.getStatusCode());
+
+        // 3 dumps are kept (jobs.export.dumps-kept)
+        LocalDateTime now = LocalDateTime.now();
+        Path dump = null;
+        for (int i = 0; i < 4; i++) {
+            dump = jobExport.dump(tempDir, now.plusMinutes(i));
+        }
+        try (var files = Files.list(tempDir)) {
+            assertThat(files).hasSize(3).contains(dump);
+        }
+        assertThat(JobColumnarReader.read(Files.readAllBytes(dump))).hasSize(2);
+    }
+
+    /*
+     * testGetChangesPaging: Ensures that a full page continues where it stopped (without a lag, to not wait for it).
+     */
+    @Test
+    void testGetChangesPaging() {
+        JobChangeFeed feed = new JobChangeFeed(jobRepository, jobTombstoneRepository, Duration.ZERO, Duration.ofDays(7));
+        LocalDateTime start = LocalDateTime.now();
+        jobService.saveJob(new Job("Page1", "Type1", 200));
+        jobService.saveJob(new Job("Page2", "Type1", 200));
+        jobService.saveJob(new Job("Page3", "Type1", 200));
+
+        JobChangesDTO first = feed.findChanges(start, 0, 2);
+        assertTrue(first.isHasMore());
+        assertThat(first.getChanged()).extracting(JobDTO::getJobName).containsExactly("Page1", "Page2");
+
+        JobChangesDTO second = feed.findChanges(first.getWatermark(), first.getWatermarkId(), 2);
+        assertFalse(second.isHasMore());
+        assertThat(second.getChanged()).extracting(JobDTO::getJobName).containsExactly("Page3");
+
+        // more jobs than the limit with one updatedAt (a bulk update): the pages split them by id and lose none
+        LocalDateTime bulk = start.minusMinutes(1).truncatedTo(ChronoUnit.SECONDS);
+        jobService.saveJob(new Job("Page4", "Type1", 200));
+        jdbcTemplate.update("UPDATE app_job SET updated_at = ?", bulk);
+        List<String> names = new ArrayList<>();
+        JobChangesDTO page = feed.findChanges(bulk.minusSeconds(1), 0, 3);
+        names.addAll(page.getChanged().stream().map(JobDTO::getJobName).toList());
+        assertTrue(page.isHasMore());
+        assertEquals(bulk, page.getWatermark());
+        page = feed.findChanges(page.getWatermark(), page.getWatermarkId(), 3);
+        names.addAll(page.getChanged().stream().map(JobDTO::getJobName).toList());
+        assertFalse(page.isHasMore());
+        assertThat(names).containsExactly("Page1", "Page2", "Page3", "Page4");
+    }
+
+    /*
+     * testJobTypeDictionary: Ensures that app_job stores the dictionary id of the jobType,
+     * while the api and the entities still see the name (one shared instance per type).
+     */
+    @Test
+    void testJobTypeDictionary() {
+        // separate String instances, like two requests would bring
+        Job job1 = jobService.saveJob(new Job("Dict1", new String("dictionary"), 200));
+        Job job2 = jobService.saveJob(new Job("Dict2", new String("dictionary"), 200));
+        jobService.saveJob(new Job("Dict3", "alpha", 200));
+
+        short typeId = jobTypeDictionary.idOf("dictionary");
+        assertEquals(typeId, jdbcTemplate.queryForObject("SELECT job_type_id FROM app_job WHERE id = ?", Short.class, job1.getId()));
+        assertSame(job1.getJobType(), job2.getJobType());
+
+        assertThat(jobController.getJobByType("dictionary").getBody()).extracting(JobDTO::getJobName)
+                .containsExactlyInAnyOrder("Dict1", "Dict2");
+        // sorting by jobType sorts by the name, not by the id
+        JobQuery jobQuery = new JobQuery();
+        jobQuery.setJobType(List.of("dictionary", "alpha"));
+        jobQuery.setSort("jobType,desc");
+        assertThat(jobController.queryJobs(jobQuery).getBody()).extracting(JobDTO::getJobName).containsExactly("Dict1", "Dict2", "Dict3");
+
+        // an unknown type matches nothing and is not added to the dictionary
+        assertThat(jobController.getJobByType("no-such-type").getBody()).isEmpty();
+        assertEquals(JobTypeDictionary.UNKNOWN_ID, jobTypeDictionary.idOf("no-such-type"));
+    }
+
+    /*
+     * testMissingJobTypeIsRemembered: Ensures that a lookup of an unknown jobType is remembered for a moment
+     * (a row added behind the dictionary's back isn't looked up again), while a write always finds the row.
+     */
+    @Test
+    void testMissingJobTypeIsRemembered() {
+        assertEquals(JobTypeDictionary.UNKNOWN_ID, jobTypeDictionary.idOf("late-type"));
+        // like another instance of the service adding it
+        jdbcTemplate.update("INSERT INTO job_type (name) VALUES (?)", "late-type");
+        assertEquals(JobTypeDictionary.UNKNOWN_ID, jobTypeDictionary.idOf("late-type"));
+
+        Job job = jobService.saveJob(new Job("Late", "late-type", 200));
+        short typeId = jobTypeDictionary.idOf("late-type");
+        assertEquals(jdbcTemplate.queryForObject("SELECT id FROM job_type WHERE name = ?", Short.class, "late-type"), typeId);
+        assertEquals(typeId, jdbcTemplate.queryForObject("SELECT job_type_id FROM app_job WHERE id = ?", Short.class, job.getId()));
+    }
+
+    /*
+     * testJobTypeOfRolledBackWrite: Ensures that a new jobType is inserted in the transaction of the job that brought it,
+     * so a rollback removes it and leaves no cached id behind, while a commit makes it known to everyone.
+     */
+    @Test
+    void testJobTypeOfRolledBackWrite() {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.executeWithoutResult(status -> {
+            jobService.saveJob(new Job("RolledBack", "rolled-back-type", 200));
+            // visible inside its own transaction
+            assertNotEquals(JobTypeDictionary.UNKNOWN_ID, jobTypeDictionary.idOf("rolled-back-type"));
+            status.setRollbackOnly();
+        });
+        assertEquals(JobTypeDictionary.UNKNOWN_ID, jobTypeDictionary.idOf("rolled-back-type"));
+        assertEquals(0, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM job_type WHERE name = ?", Integer.class, "rolled-back-type"));
+
+        Job job = jobService.saveJob(new Job("Committed", "committed-type", 200));
+        short typeId = jobTypeDictionary.idOf("committed-type");
+        assertEquals(typeId, jdbcTemplate.queryForObject("SELECT job_type_id FROM app_job WHERE id = ?", Short.class, job.getId()));
+    }
+
     @Test
     void testCreateInvalidJob() {
         Job job = new Job("Job1", "Type1", 99); // Invalid status
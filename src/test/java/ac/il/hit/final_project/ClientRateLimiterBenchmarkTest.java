@@ -0,0 +1,94 @@
+package ac.il.hit.final_project;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Contention benchmark for ClientRateLimiter.
+ * Runs only with: mvn test -Pbenchmark
+ * Measures the cost of tryAcquire() with many threads, once with all threads hammering a few
+ * hot clients (worst case for the CAS loop) and once spread over many clients.
+ */
+@Tag("benchmark")
+public class ClientRateLimiterBenchmarkTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(ClientRateLimiterBenchmarkTest.class);
+
+    private static final int THREADS = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+    private static final int OPS_PER_THREAD = 2_000_000;
+    private static final int WARMUP_OPS_PER_THREAD = 200_000;
+
+    @Test
+    void benchmarkHotClients() throws Exception {
+        run("hot clients", 4);
+    }
+
+    @Test
+    void benchmarkManyClients() throws Exception {
+        run("many clients", 10_000);
+    }
+
+    private void run(String name, int clients) throws Exception {
+        String[] keys = new String[clients];
+        for (int i = 0; i < clients; i++) {
+            keys[i] = "10.0." + (i / 256) + "." + (i % 256);
+        }
+        ClientRateLimiter limiter = new ClientRateLimiter(1_000_000, 1_000);
+
+        measure(limiter, keys, WARMUP_OPS_PER_THREAD);
+        long[] result = measure(limiter, keys, OPS_PER_THREAD);
+
+        long totalOps = (long) THREADS * OPS_PER_THREAD;
+        double nanosPerOp = (double) result[0] * THREADS / totalOps;
+        logger.info("{}: {} threads, {} ops, {} ns/op per thread, {} allowed",
+                name, THREADS, totalOps, String.format("%.1f", nanosPerOp), result[1]);
+
+        assertTrue(result[1] > 0);
+        // the limiter should stay far below a microsecond per call
+        assertTrue(nanosPerOp < 1_000, "rate limiter too slow: " + nanosPerOp + " ns/op");
+    }
+
+    //returns {elapsed nanos, allowed count}
+    private long[] measure(ClientRateLimiter limiter, String[] keys, int opsPerThread) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(THREADS);
+        LongAdder allowed = new LongAdder();
+        for (int t = 0; t < THREADS; t++) {
+            int offset = t;
+            pool.execute(() -> {
+                try {
+                    start.await();
+                    long mine = 0;
+                    for (int i = 0; i < opsPerThread; i++) {
+                        if (limiter.tryAcquire(keys[(i + offset) % keys.length]) == 0) {
+                            mine++;
+                        }
+                    }
+                    allowed.add(mine);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        done.await();
+        long elapsed = System.nanoTime() - begin;
+        pool.shutdown();
+        pool.awaitTermination(10, TimeUnit.SECONDS);
+        return new long[]{elapsed, allowed.sum()};
+    }
+}
@@ -0,0 +1,86 @@
+package ac.il.hit.final_project;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the GCRA token bucket, using a fake clock so nothing depends on timing.
+ */
+public class ClientRateLimiterTest {
+
+    private static final long SECOND = 1_000_000_000L;
+
+    private final AtomicLong clock = new AtomicLong();
+
+    @Test
+    void testBurstThenReject() {
+        // 10 per second, bursts of 3
+        ClientRateLimiter limiter = new ClientRateLimiter(10, 3, clock::get);
+
+        assertEquals(0, limiter.tryAcquire("runner-1"));
+        assertEquals(0, limiter.tryAcquire("runner-1"));
+        assertEquals(0, limiter.tryAcquire("runner-1"));
+
+        // the bucket is empty, the client is told to wait one emission interval
+        assertEquals(SECOND / 10, limiter.tryAcquire("runner-1"));
+    }
+
+    @Test
+    void testTokensRefillOverTime() {
+        ClientRateLimiter limiter = new ClientRateLimiter(10, 1, clock::get);
+
+        assertEquals(0, limiter.tryAcquire("runner-1"));
+        assertTrue(limiter.tryAcquire("runner-1") > 0);
+
+        clock.addAndGet(SECOND / 10);
+        assertEquals(0, limiter.tryAcquire("runner-1"));
+    }
+
+    @Test
+    void testClientsAreIndependent() {
+        ClientRateLimiter limiter = new ClientRateLimiter(1, 1, clock::get);
+
+        assertEquals(0, limiter.tryAcquire("runner-1"));
+        assertTrue(limiter.tryAcquire("runner-1") > 0);
+
+        // a different client still has its full bucket
+        assertEquals(0, limiter.tryAcquire("runner-2"));
+    }
+
+    @Test
+    void testEvictIdle() {
+        ClientRateLimiter limiter = new ClientRateLimiter(10, 1, clock::get);
+        limiter.tryAcquire("runner-1");
+        limiter.tryAcquire("runner-2");
+        assertEquals(2, limiter.size());
+
+        // not idle long enough yet
+        assertEquals(0, limiter.evictIdle(60 * SECOND));
+
+        clock.addAndGet(61 * SECOND);
+        limiter.tryAcquire("runner-2");
+        assertEquals(1, limiter.evictIdle(60 * SECOND));
+        assertEquals(1, limiter.size());
+    }
+
+    @Test
+    void testNewClientsRejectedWhileFull() {
+        ClientRateLimiter limiter = new ClientRateLimiter(10, 1, 2, clock::get);
+        assertEquals(0, limiter.tryAcquire("runner-1"));
+        assertEquals(0, limiter.tryAcquire("runner-2"));
+
+        // no bucket for a third client, the known ones go on as usual
+        assertTrue(limiter.tryAcquire("runner-3") > 0);
+        assertEquals(2, limiter.size());
+        clock.addAndGet(SECOND);
+        assertEquals(0, limiter.tryAcquire("runner-1"));
+
+        // room again once idle clients are evicted
+        clock.addAndGet(61 * SECOND);
+        limiter.evictIdle(60 * SECOND);
+        assertEquals(0, limiter.tryAcquire("runner-3"));
+    }
+}
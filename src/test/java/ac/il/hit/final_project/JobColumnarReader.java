@@ -0,0 +1,132 @@
+package ac.il.hit.final_project;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Test helper that reads a JCOL file back into rows, following the layout described in JobColumnarWriter.
+ * It only relies on the header for the order of the columns, like a reader in another language would.
+ */
+final class JobColumnarReader {
+
+    private JobColumnarReader() {
+    }
+
+    static List<JobExportRow> read(byte[] file) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(file));
+        byte[] magic = new byte[4];
+        in.readFully(magic);
+        if (!Arrays.equals(magic, JobColumnarWriter.MAGIC) || readVarLong(in) != JobColumnarWriter.VERSION) {
+            throw new IOException("Not a JCOL file");
+        }
+        int columns = (int) readVarLong(in);
+        String[] names = new String[columns];
+        for (int i = 0; i < columns; i++) {
+            names[i] = readString(in);
+            readVarLong(in); //type
+            readVarLong(in); //encoding
+        }
+
+        List<JobExportRow> rows = new ArrayList<>();
+        int groupRows;
+        while ((groupRows = (int) readVarLong(in)) > 0) {
+            Object[][] values = new Object[columns][];
+            for (int c = 0; c < columns; c++) {
+                byte[] block = new byte[(int) readVarLong(in)];
+                in.readFully(block);
+                values[c] = readColumn(names[c], new DataInputStream(new ByteArrayInputStream(block)), groupRows);
+            }
+            for (int r = 0; r < groupRows; r++) {
+                rows.add(new JobExportRow((Long) value(values, names, "id", r), (String) value(values, names, "jobName", r),
+                        (Integer) value(values, names, "status", r), (String) value(values, names, "jobType", r),
+                        time((Long) value(values, names, "createdAt", r)), time((Long) value(values, names, "updatedAt", r))));
+            }
+        }
+        long total = readVarLong(in);
+        if (total != rows.size()) {
+            throw new IOException("Expected " + total + " rows, read " + rows.size());
+        }
+        return rows;
+    }
+
+    private static Object value(Object[][] values, String[] names, String column, int row) {
+        return values[Arrays.asList(names).indexOf(column)][row];
+    }
+
+    private static Object[] readColumn(String name, DataInputStream in, int rows) throws IOException {
+        boolean[] nulls = new boolean[rows];
+        if (readVarLong(in) > 0) {
+            byte[] bitmap = new byte[(rows + 7) / 8];
+            in.readFully(bitmap);
+            for (int r = 0; r < rows; r++) {
+                nulls[r] = (bitmap[r / 8] & (1 << (r % 8))) != 0;
+            }
+        }
+        Object[] values = new Object[rows];
+        switch (name) {
+            case "id", "createdAt", "updatedAt" -> {
+                long previous = 0;
+                for (int r = 0; r < rows; r++) {
+                    if (!nulls[r]) {
+                        previous += unzigzag(readVarLong(in));
+                        values[r] = previous;
+                    }
+                }
+            }
+            case "jobName" -> {
+                for (int r = 0; r < rows; r++) {
+                    values[r] = nulls[r] ? null : readString(in);
+                }
+            }
+            case "status", "jobType" -> {
+                Object[] dictionary = new Object[(int) readVarLong(in)];
+                for (int i = 0; i < dictionary.length; i++) {
+                    dictionary[i] = name.equals("status") ? (Object) (int) unzigzag(readVarLong(in)) : readString(in);
+                }
+                for (int r = 0; r < rows; r++) {
+                    values[r] = nulls[r] ? null : dictionary[(int) readVarLong(in)];
+                }
+            }
+            default -> throw new IOException("Unknown column " + name);
+        }
+        return values;
+    }
+
+    private static LocalDateTime time(Long epochMillis) {
+        return epochMillis != null ? LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneOffset.UTC) : null;
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static long readVarLong(InputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException();
+            }
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[(int) readVarLong(in)];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,70 @@
+package ac.il.hit.final_project;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for JobColumnarWriter, the files are read back with JobColumnarReader.
+ */
+public class JobColumnarWriterTest {
+
+    private final LocalDateTime start = LocalDateTime.of(2024, 7, 1, 10, 0, 0);
+
+    private byte[] write(List<JobExportRow> rows, int rowGroupSize) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        JobColumnarWriter writer = new JobColumnarWriter(out, rowGroupSize);
+        for (JobExportRow row : rows) {
+            writer.write(row);
+        }
+        assertEquals(rows.size(), writer.finish());
+        return out.toByteArray();
+    }
+
+    @Test
+    void testRowsSurviveARoundTrip() throws IOException {
+        List<JobExportRow> rows = new ArrayList<>();
+        String[] types = {"build", "deploy", "test"};
+        int[] statuses = {200, 500, 102};
+        for (int i = 0; i < 25; i++) {
+            LocalDateTime created = start.plusSeconds(i * 37L);
+            rows.add(new JobExportRow(1000L + i * 3, "job " + i + " ✓", statuses[i % 3], types[i % 3], created, created.plusMinutes(i)));
+        }
+
+        // 25 rows in row groups of 10: 10, 10 and 5
+        assertEquals(rows, JobColumnarReader.read(write(rows, 10)));
+    }
+
+    @Test
+    void testNullsAndNegativeDeltas() throws IOException {
+        List<JobExportRow> rows = List.of(
+                new JobExportRow(5L, null, null, null, null, null),
+                new JobExportRow(7L, "Job7", 404, "error", start, start.minusDays(1)),
+                new JobExportRow(9L, "Job9", 404, null, start.minusYears(30), null));
+
+        assertEquals(rows, JobColumnarReader.read(write(rows, 100)));
+    }
+
+    @Test
+    void testEmptyExport() throws IOException {
+        assertEquals(List.of(), JobColumnarReader.read(write(List.of(), 100)));
+    }
+
+    @Test
+    void testDictionaryAndDeltaKeepRowsSmall() throws IOException {
+        List<JobExportRow> rows = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            LocalDateTime created = start.plusSeconds(i);
+            rows.add(new JobExportRow((long) i + 1, "j", 200, "regular", created, created));
+        }
+
+        // id, status and jobType take a byte each, created and updated 2 (a second apart), the name 2
+        assertTrue(write(rows, 8192).length < 1000 * 9 + 200);
+    }
+}
@@ -0,0 +1,108 @@
+package ac.il.hit.final_project;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for JobDurationSketches: terminal transitions, percentile accuracy and merging of windows.
+ * Everything stays within the memory retention, so the repository is never used.
+ */
+public class JobDurationSketchesTest {
+
+    private final JobDurationSketches sketches = new JobDurationSketches(null, Duration.ofDays(7));
+    private final LocalDateTime now = LocalDateTime.now();
+
+    private static JobSnapshot snapshot(Integer status, String jobType, LocalDateTime createdAt) {
+        return new JobSnapshot(1L, "Job1", status, jobType, createdAt);
+    }
+
+    @Test
+    void testOnlyTerminalTransitionsAreRecorded() {
+        LocalDateTime createdAt = now.minusMinutes(5);
+        // created, queued -> processing, processing -> done, done -> failed
+        sketches.onJobChanged(JobChangedEvent.created(new Job("Job1", "build", 202)));
+        sketches.onJobChanged(new JobChangedEvent(JobChangedEvent.Kind.UPDATED, 1L, snapshot(202, "build", createdAt), snapshot(102, "build", createdAt)));
+        sketches.onJobChanged(new JobChangedEvent(JobChangedEvent.Kind.UPDATED, 1L, snapshot(102, "build", createdAt), snapshot(200, "build", createdAt)));
+        sketches.onJobChanged(new JobChangedEvent(JobChangedEvent.Kind.UPDATED, 1L, snapshot(200, "build", createdAt), snapshot(500, "build", createdAt)));
+
+        List<JobDurationStats> stats = sketches.findDurations(now.minusHours(1), now.plusHours(1), "build");
+        assertEquals(1, stats.size());
+        assertEquals(1, stats.get(0).getCount());
+        // about 5 minutes, histograms keep 2 significant digits
+        assertEquals(Duration.ofMinutes(5).toMillis(), stats.get(0).getP50(), Duration.ofMinutes(5).toMillis() / 100.0);
+    }
+
+    @Test
+    void testPercentilesPerJobType() {
+        for (int i = 1; i <= 1000; i++) {
+            sketches.record("build", now.minusSeconds(i), now);
+        }
+        sketches.record("deploy", now.minusHours(2), now);
+
+        List<JobDurationStats> stats = sketches.findDurations(now.minusHours(1), now.plusHours(1), null);
+        assertEquals(2, stats.size());
+
+        JobDurationStats build = stats.get(0);
+        assertEquals("build", build.getJobType());
+        assertEquals(1000, build.getCount());
+        assertEquals(500_000, build.getP50(), 5_000);
+        assertEquals(900_000, build.getP90(), 9_000);
+        assertEquals(990_000, build.getP99(), 9_900);
+        assertEquals(1_000_000, build.getMax(), 10_000);
+
+        assertEquals("deploy", stats.get(1).getJobType());
+        assertEquals(Duration.ofHours(2).toMillis(), stats.get(1).getMax(), Duration.ofHours(2).toMillis() / 100.0);
+    }
+
+    @Test
+    void testSubSecondDurations() {
+        for (int i = 1; i <= 100; i++) {
+            sketches.record("lint", now.minusNanos(i * 5_000_000L), now);
+        }
+
+        JobDurationStats lint = sketches.findDurations(now.minusHours(1), now.plusHours(1), "lint").get(0);
+        assertEquals(100, lint.getCount());
+        assertEquals(250, lint.getP50(), 2.5);
+        assertEquals(500, lint.getMax(), 5);
+    }
+
+    @Test
+    void testWindowsOfRangeAreMerged() {
+        LocalDateTime thisHour = now.truncatedTo(JobDurationSketches.WINDOW);
+        sketches.record("build", thisHour.minusHours(3).plusMinutes(1), thisHour.minusHours(3).plusMinutes(2));
+        sketches.record("build", thisHour.minusHours(1), thisHour.minusHours(1).plusMinutes(10));
+        sketches.record("build", thisHour, thisHour.plusMinutes(30));
+
+        // the last two hours hold the 10 and 30 minute jobs
+        JobDurationStats recent = sketches.findDurations(thisHour.minusHours(1), thisHour.plusHours(1), "build").get(0);
+        assertEquals(2, recent.getCount());
+        assertEquals(Duration.ofMinutes(30).toMillis(), recent.getMax(), Duration.ofMinutes(30).toMillis() / 100.0);
+
+        assertEquals(3, sketches.findDurations(thisHour.minusHours(3), thisHour.plusHours(1), "build").get(0).getCount());
+        assertTrue(sketches.findDurations(thisHour.minusHours(3), thisHour.minusHours(1), "deploy").isEmpty());
+    }
+
+    @Test
+    void testEmptyRangeIsIllegal() {
+        assertThrows(InvalidJobException.class, () -> sketches.findDurations(now, now.minusHours(1), null));
+    }
+
+    @Test
+    void testRangeOfTooManyWindowsIsIllegal() {
+        InvalidJobException thrown = assertThrows(InvalidJobException.class,
+                () -> sketches.findDurations(now.minusDays(365), now, null));
+        assertEquals(JobError.RANGE_TOO_LARGE, thrown.getError());
+        assertTrue(sketches.findDurations(now.minusDays(7), now, null).isEmpty());
+    }
+
+    @Test
+    void testWindowIsSmall() {
+        // the memory a (jobType, hour) window takes, whatever it counts
+        assertTrue(JobDurationSketches.newWindowHistogram().getEstimatedFootprintInBytes() < 15_000);
+    }
+}
@@ -0,0 +1,110 @@
+package ac.il.hit.final_project;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Error-heavy traffic benchmark: the cost of failing a request with 400 / 404.
+ * Runs only with: mvn test -Pbenchmark
+ * before - a RuntimeException with a stack trace, wrapped by the controller into a ResponseStatusException
+ *          and rendered into a fresh json body (what JobService / JobController did before the typed exceptions)
+ * after  - a stackless InvalidJobException / JobNotFoundException and the prepared response of its JobError
+ * The exceptions are thrown STACK_DEPTH frames deep, a request thread under tomcat + spring security + spring mvc
+ * is at least that deep when the service throws.
+ */
+@Tag("benchmark")
+public class JobErrorPathBenchmarkTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(JobErrorPathBenchmarkTest.class);
+
+    private static final int STACK_DEPTH = 150;
+    private static final int OPS = 200_000;
+    private static final int WARMUP_OPS = 50_000;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final JobErrorHandler errorHandler = new JobErrorHandler();
+
+    //keeps the jit from dropping the results
+    private long sink;
+
+    @Test
+    void benchmarkErrorPath() {
+        // 2 of every 3 failures are bad statuses, the rest missing jobs
+        Supplier<RuntimeException> before = new Supplier<>() {
+            int i;
+
+            @Override
+            public RuntimeException get() {
+                return new RuntimeException(i++ % 3 == 2 ? "Job not found" : "Illegal status");
+            }
+        };
+        Supplier<RuntimeException> after = new Supplier<>() {
+            int i;
+
+            @Override
+            public RuntimeException get() {
+                return i++ % 3 == 2 ? new JobNotFoundException() : new InvalidJobException(JobError.ILLEGAL_STATUS);
+            }
+        };
+
+        measure(before, this::renderBefore, WARMUP_OPS);
+        measure(after, this::renderAfter, WARMUP_OPS);
+        double beforeNanos = measure(before, this::renderBefore, OPS);
+        double afterNanos = measure(after, this::renderAfter, OPS);
+
+        logger.info("error path: before {} ns/op, after {} ns/op ({}x), sink {}",
+                String.format("%.0f", beforeNanos), String.format("%.0f", afterNanos),
+                String.format("%.1f", beforeNanos / afterNanos), sink);
+        assertTrue(afterNanos < beforeNanos, "the typed error path should be cheaper");
+    }
+
+    private double measure(Supplier<RuntimeException> failure, ToIntFunction<RuntimeException> render, int ops) {
+        long start = System.nanoTime();
+        for (int i = 0; i < ops; i++) {
+            try {
+                throwAt(STACK_DEPTH, failure);
+            } catch (RuntimeException e) {
+                sink += render.applyAsInt(e);
+            }
+        }
+        return (double) (System.nanoTime() - start) / ops;
+    }
+
+    private static void throwAt(int depth, Supplier<RuntimeException> failure) {
+        if (depth == 0) {
+            throw failure.get();
+        }
+        throwAt(depth - 1, failure);
+    }
+
+    //the old controller: wrap the cause (a second stack trace) and serialize a new body
+    private int renderBefore(RuntimeException e) {
+        HttpStatus status = "Job not found".equals(e.getMessage()) ? HttpStatus.NOT_FOUND : HttpStatus.BAD_REQUEST;
+        ResponseStatusException wrapped = new ResponseStatusException(status, e.getMessage(), e);
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("status", wrapped.getStatusCode().value());
+        body.put("error", status.getReasonPhrase());
+        body.put("message", wrapped.getReason());
+        try {
+            return objectMapper.writeValueAsBytes(body).length;
+        } catch (Exception ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private int renderAfter(RuntimeException e) {
+        return errorHandler.handleJobApiException((JobApiException) e).getBody().length;
+    }
+}
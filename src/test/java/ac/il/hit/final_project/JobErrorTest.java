@@ -0,0 +1,41 @@
+package ac.il.hit.final_project;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the typed exceptions of the jobs api and the prepared responses of JobError.
+ */
+public class JobErrorTest {
+
+    @Test
+    void testExceptionsHaveNoStackTrace() {
+        JobNotFoundException notFound = new JobNotFoundException();
+        assertEquals(0, notFound.getStackTrace().length);
+        assertEquals(HttpStatus.NOT_FOUND, notFound.getStatusCode());
+        assertEquals("Job not found", notFound.getReason());
+
+        InvalidJobException invalid = new InvalidJobException(JobError.ILLEGAL_STATUS);
+        assertEquals(0, invalid.getStackTrace().length);
+        assertEquals(HttpStatus.BAD_REQUEST, invalid.getStatusCode());
+        assertEquals("Illegal status", invalid.getReason());
+    }
+
+    @Test
+    void testPreparedResponse() {
+        ResponseEntity<byte[]> response = new JobErrorHandler().handleJobApiException(new JobNotFoundException());
+
+        assertEquals(HttpStatus.NOT_FOUND, response.getStatusCode());
+        assertEquals(MediaType.APPLICATION_JSON, response.getHeaders().getContentType());
+        assertEquals("{\"status\":404,\"error\":\"Not Found\",\"message\":\"Job not found\"}",
+                new String(response.getBody(), StandardCharsets.UTF_8));
+        // the same response object for every request
+        assertSame(response, JobError.JOB_NOT_FOUND.response());
+    }
+}
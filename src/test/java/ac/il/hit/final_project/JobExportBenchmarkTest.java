@@ -0,0 +1,168 @@
+package ac.il.hit.final_project;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManagerFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Compares the columnar export with the json paths the analytics team used so far.
+ * Runs only with: mvn test -Pbenchmark (-Dbenchmark.rows=... to change the number of rows, default 200k)
+ * json     - GET /jobs as it is: all jobs loaded as entities, one json array of JobDTO
+ * ndjson   - GET /jobs/export?format=ndjson, streamed, one object per line
+ * columnar - GET /jobs/export (JCOL), streamed
+ * for each: size (plain and gzipped, like it would go over the wire), time to produce it and time to parse it back.
+ */
+@Tag("benchmark")
+@SpringBootTest
+public class JobExportBenchmarkTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(JobExportBenchmarkTest.class);
+
+    private static final int ROWS = Integer.getInteger("benchmark.rows", 200_000);
+    private static final long FIRST_ID = 400_000_000L;
+    private static final int BATCH = 10_000;
+    private static final int RUNS = 3;
+    private static final String[] TYPES = {"regular", "error", "creation", "deploy", "integration-test",
+            "unit-test", "nightly-build", "release", "rollback", "security-scan"};
+    private static final int[] STATUSES = {200, 200, 200, 204, 404, 500, 102, 202};
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private JobTypeDictionary jobTypeDictionary;
+
+    @Autowired
+    private JobRepository jobRepository;
+
+    @Autowired
+    private JobExport jobExport;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @BeforeEach
+    void setUp() {
+        // jobs created a few seconds apart and updated when they finished, like real ones
+        long start = System.currentTimeMillis() - ROWS * 5_000L;
+        List<Object[]> rows = new ArrayList<>(BATCH);
+        for (int i = 0; i < ROWS; i++) {
+            short typeId = jobTypeDictionary.idOf(jobTypeDictionary.register(TYPES[(i * 7) % TYPES.length]));
+            Timestamp created = new Timestamp(start + i * 5_000L + (i * 31) % 1000);
+            Timestamp updated = new Timestamp(created.getTime() + 60_000L + (i * 997) % 600_000);
+            rows.add(new Object[]{FIRST_ID + i, "nightly build #" + i, STATUSES[i % STATUSES.length], typeId, created, updated});
+            if (rows.size() == BATCH || i == ROWS - 1) {
+                jdbcTemplate.batchUpdate("INSERT INTO app_job (id, job_name, status, job_type_id, created_at, updated_at)"
+                        + " VALUES (?, ?, ?, ?, ?, ?)", rows);
+                rows.clear();
+            }
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.update("DELETE FROM app_job WHERE id >= ?", FIRST_ID);
+        entityManagerFactory.getCache().evict(Job.class);
+    }
+
+    @Test
+    void compareFormats() throws IOException {
+        byte[] json = measure("json", () -> {
+            // what GET /jobs does (the cached findAll() would not see the rows inserted behind hibernate's back)
+            List<JobDTO> jobs = jobRepository.findAll(Sort.by("id")).stream().map(JobDTO::new).toList();
+            return objectMapper.writeValueAsBytes(jobs);
+        }, bytes -> objectMapper.readTree(bytes).size());
+
+        byte[] ndjson = measure("ndjson", () -> export(JobExport.Format.NDJSON), bytes -> {
+            int count = 0;
+            try (MappingIterator<JsonNode> lines = objectMapper.readerFor(JsonNode.class).readValues(bytes)) {
+                while (lines.hasNext()) {
+                    lines.next();
+                    count++;
+                }
+            }
+            return count;
+        });
+
+        byte[] columnar = measure("columnar", () -> export(JobExport.Format.COLUMNAR),
+                bytes -> JobColumnarReader.read(bytes).size());
+
+        assertTrue(columnar.length < ndjson.length);
+        assertTrue(gzip(columnar).length < gzip(ndjson).length);
+        // json has fewer columns (no times), the columnar export is still smaller
+        assertTrue(columnar.length < json.length);
+    }
+
+    private byte[] export(JobExport.Format format) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(ROWS * 32);
+        jobExport.export(format, out);
+        return out.toByteArray();
+    }
+
+    //best of RUNS for producing and for parsing, logs the sizes and times
+    private byte[] measure(String name, Producer producer, Parser parser) throws IOException {
+        byte[] output = null;
+        long bestProduce = Long.MAX_VALUE;
+        long bestParse = Long.MAX_VALUE;
+        int parsed = 0;
+        for (int run = 0; run < RUNS; run++) {
+            long start = System.nanoTime();
+            output = producer.produce();
+            bestProduce = Math.min(bestProduce, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            parsed = parser.parse(output);
+            bestParse = Math.min(bestParse, System.nanoTime() - start);
+        }
+        int gzipped = gzip(output).length;
+        logger.info("{}: {} jobs, {} bytes ({} per job), gzipped {} bytes ({} per job), produced in {} ms, parsed in {} ms",
+                name, parsed, output.length, output.length / Math.max(parsed, 1), gzipped, gzipped / Math.max(parsed, 1),
+                bestProduce / 1_000_000, bestParse / 1_000_000);
+        assertTrue(parsed >= ROWS);
+        return output;
+    }
+
+    private static byte[] gzip(byte[] bytes) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 4);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    @FunctionalInterface
+    private interface Producer {
+        byte[] produce() throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface Parser {
+        int parse(byte[] bytes) throws IOException;
+    }
+}
@@ -0,0 +1,74 @@
+package ac.il.hit.final_project;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the trigram index of job names.
+ * The index only calls JobRepository.findAllNames (in rebuild), a proxy answers it, no spring context is needed.
+ */
+public class JobNameIndexTest {
+
+    private JobNameIndex index;
+
+    @Test
+    void testSearchRanksPrefixMatchesFirst() {
+        index = indexOver(() -> List.of(row(1, "nightly build"), row(2, "build 42"), row(3, "deploy")));
+        index.rebuild();
+
+        assertEquals(List.of(2L, 1L), index.search("build", 10));
+        assertEquals(List.of(3L), index.search("DEP", 10));
+        assertTrue(index.search("release", 10).isEmpty());
+    }
+
+    @Test
+    void testWritesDuringRebuildAreKept() {
+        // while the rebuild reads the table a job is created and another one deleted,
+        // the rows it reads are from before both
+        index = indexOver(() -> {
+            index.put(3L, "release 7");
+            index.remove(2L);
+            return List.of(row(1, "build 1"), row(2, "build 2"));
+        });
+        index.put(2L, "build 2");
+        index.rebuild();
+
+        assertEquals(List.of(3L), index.search("release", 10));
+        assertEquals(List.of(1L), index.search("build", 10));
+        assertEquals(2, index.size());
+
+        // once the rebuild is over, writes are applied as usual
+        index.put(4L, "release 8");
+        assertEquals(List.of(3L, 4L), index.search("release", 10).stream().sorted().toList());
+    }
+
+    private static JobNameIndex indexOver(Supplier<List<JobRepository.JobNameView>> names) {
+        JobRepository repository = (JobRepository) Proxy.newProxyInstance(JobRepository.class.getClassLoader(),
+                new Class<?>[]{JobRepository.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("findAllNames")) {
+                        return names.get();
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+        return new JobNameIndex(repository);
+    }
+
+    private static JobRepository.JobNameView row(long id, String jobName) {
+        return new JobRepository.JobNameView() {
+            @Override
+            public Long getId() {
+                return id;
+            }
+
+            @Override
+            public String getJobName() {
+                return jobName;
+            }
+        };
+    }
+}
@@ -0,0 +1,112 @@
+package ac.il.hit.final_project;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Benchmark of the trigram name index against a SQL LIKE '%x%' scan.
+ * Runs only with: mvn test -Pbenchmark (-Dbenchmark.rows=... to change the table size, default 1M)
+ */
+@Tag("benchmark")
+@SpringBootTest
+public class JobNameSearchBenchmarkTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(JobNameSearchBenchmarkTest.class);
+
+    private static final int ROWS = Integer.getInteger("benchmark.rows", 1_000_000);
+    private static final long FIRST_ID = 100_000_000L;
+    private static final int BATCH = 10_000;
+    private static final int RUNS = 20;
+    private static final String[] BRANCHES = {"main", "develop", "feature-login", "feature-search", "hotfix-db", "release"};
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private JobNameIndex jobNameIndex;
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.update("DELETE FROM app_job WHERE id >= ?", FIRST_ID);
+        jobNameIndex.rebuild();
+    }
+
+    @Test
+    void benchmarkSearch() {
+        insertRows();
+        long start = System.nanoTime();
+        jobNameIndex.rebuild();
+        logger.info("index build: {} rows in {} ms", ROWS, (System.nanoTime() - start) / 1_000_000);
+
+        // rare: one single build number, common: a branch that is in a sixth of the names
+        String rare = "#" + (ROWS / 2) + " ";
+        String common = "feature-search";
+
+        compare("rare fragment", rare);
+        compare("common fragment", common);
+    }
+
+    private void compare(String name, String fragment) {
+        List<Long> fromIndex = jobNameIndex.search(fragment, 20);
+        List<Long> fromLike = likeScan(fragment);
+        assertFalse(fromIndex.isEmpty());
+        assertEquals(fromLike.isEmpty(), fromIndex.isEmpty());
+
+        double indexMs = time(() -> jobNameIndex.search(fragment, 20));
+        double likeMs = time(() -> likeScan(fragment));
+        logger.info("{} '{}': index {} ms/query, LIKE scan {} ms/query ({} rows)",
+                name, fragment, String.format("%.3f", indexMs), String.format("%.3f", likeMs), ROWS);
+    }
+
+    private List<Long> likeScan(String fragment) {
+        return jdbcTemplate.queryForList("SELECT id FROM app_job WHERE LOWER(job_name) LIKE ? LIMIT 20",
+                Long.class, "%" + fragment.toLowerCase() + "%");
+    }
+
+    private static double time(Supplier<?> query) {
+        for (int i = 0; i < 3; i++) {
+            query.get();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < RUNS; i++) {
+            query.get();
+        }
+        return (System.nanoTime() - start) / 1_000_000.0 / RUNS;
+    }
+
+    private void insertRows() {
+        Random random = new Random(42);
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        List<Object[]> batch = new ArrayList<>(BATCH);
+        for (int i = 0; i < ROWS; i++) {
+            String branch = BRANCHES[random.nextInt(BRANCHES.length)];
+            String jobName = "nightly build " + branch + " #" + i + " ";
+            batch.add(new Object[]{FIRST_ID + i, jobName, 200, now, now});
+            if (batch.size() == BATCH) {
+                flush(batch);
+            }
+        }
+        flush(batch);
+    }
+
+    private void flush(List<Object[]> batch) {
+        jdbcTemplate.batchUpdate(
+                "INSERT INTO app_job (id, job_name, status, created_at, updated_at) VALUES (?, ?, ?, ?, ?)", batch);
+        batch.clear();
+    }
+}
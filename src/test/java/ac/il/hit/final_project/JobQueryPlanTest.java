@@ -0,0 +1,131 @@
+package ac.il.hit.final_project;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks the query plans of the predicate combinations GET /jobs/query generates,
+ * to make sure H2 uses the composite indexes of app_job instead of scanning the table.
+ * Each test runs the query through JobService, and explains the statement hibernate really sent (with its parameters),
+ * as SqlStatementRecorder recorded it.
+ */
+@SpringBootTest
+public class JobQueryPlanTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(JobQueryPlanTest.class);
+
+    //ids far away from the ones the sequence hands out, these rows never meet the other tests
+    private static final long FIRST_ID = 200_000_000L;
+    private static final int ROWS = 5_000;
+
+    //the rows are spread over 30 days, "recent" is the last day of them
+    private final LocalDateTime start = LocalDateTime.now().withNano(0).minusDays(30);
+    private final LocalDateTime recent = start.plusDays(29);
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private JobTypeDictionary jobTypeDictionary;
+
+    @Autowired
+    private JobService jobService;
+
+    @Autowired
+    private SqlStatementRecorder sqlStatementRecorder;
+
+    @BeforeEach
+    void setUp() {
+        // give the optimizer a table worth using an index for
+        String[] types = {"regular", "error", "creation", "deploy", "test"};
+        short[] typeIds = new short[types.length];
+        for (int i = 0; i < types.length; i++) {
+            typeIds[i] = jobTypeDictionary.idOf(jobTypeDictionary.register(types[i]));
+        }
+        int[] statuses = {200, 204, 404, 500, 102};
+        Timestamp first = Timestamp.valueOf(start);
+        List<Object[]> rows = new ArrayList<>(ROWS);
+        for (int i = 0; i < ROWS; i++) {
+            Timestamp created = new Timestamp(first.getTime() + i * (30 * 24 * 60 * 60_000L / ROWS));
+            rows.add(new Object[]{FIRST_ID + i, "job " + i, statuses[i % statuses.length], typeIds[(i / 5) % types.length], created, created});
+        }
+        jdbcTemplate.batchUpdate(
+                "INSERT INTO app_job (id, job_name, status, job_type_id, created_at, updated_at) VALUES (?, ?, ?, ?, ?, ?)", rows);
+        jdbcTemplate.execute("ANALYZE TABLE app_job");
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.update("DELETE FROM app_job WHERE id >= ?", FIRST_ID);
+    }
+
+    //runs the query like GET /jobs/query does, and explains the statement it sent to app_job
+    private String plan(Consumer<JobQuery> criteria) {
+        JobQuery jobQuery = new JobQuery();
+        criteria.accept(jobQuery);
+        List<SqlStatementRecorder.Statement> statements;
+        try (SqlStatementRecorder.Scope scope = sqlStatementRecorder.open("GET /jobs/query")) {
+            assertThat(jobService.findJobsByQuery(jobQuery)).isNotEmpty();
+            statements = scope.getStatements();
+        }
+        assertThat(statements).hasSize(1);
+        SqlStatementRecorder.Statement statement = statements.get(0);
+        assertThat(statement.sql()).containsIgnoringCase("app_job");
+        String plan = jdbcTemplate.queryForObject("EXPLAIN " + statement.sql(), String.class, statement.parameters().toArray());
+        logger.info("plan of {} {}:\n{}", statement.sql(), statement.parameters(), plan);
+        return plan;
+    }
+
+    // which of the composite indexes wins is up to the optimizer, what matters is that one of them is used
+
+    @Test
+    void testStatusAndCreatedRangeUsesIndex() {
+        String plan = plan(query -> {
+            query.setStatus(List.of(500, 404));
+            query.setCreatedFrom(recent);
+        });
+
+        assertThat(plan).containsIgnoringCase("IDX_JOB_").doesNotContainIgnoringCase("tableScan");
+    }
+
+    @Test
+    void testJobTypeAndCreatedRangeUsesIndex() {
+        String plan = plan(query -> {
+            query.setJobType(List.of("error"));
+            query.setCreatedFrom(recent);
+        });
+
+        assertThat(plan).containsIgnoringCase("IDX_JOB_").doesNotContainIgnoringCase("tableScan");
+    }
+
+    @Test
+    void testStatusAndJobTypeUsesIndex() {
+        String plan = plan(query -> {
+            query.setStatus(List.of(500));
+            query.setJobType(List.of("error"));
+        });
+
+        assertThat(plan).containsIgnoringCase("IDX_JOB_").doesNotContainIgnoringCase("tableScan");
+    }
+
+    @Test
+    void testCreatedRangeOnlyUsesIndex() {
+        String plan = plan(query -> query.setCreatedFrom(recent));
+
+        assertThat(plan).containsIgnoringCase("IDX_JOB_CREATED").doesNotContainIgnoringCase("tableScan");
+    }
+}
@@ -0,0 +1,119 @@
+package ac.il.hit.final_project;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.core.annotation.Order;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.UnaryOperator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks the order of the after-commit listeners of JobReadCoalescer and JobResponseCache.
+ * A probe listener runs between them and fills like GET /jobs/jobType/{jobType} does while a read that started
+ * before the commit is still running: the fill must not get the result of that read, and its stamp must be stale.
+ */
+@SpringBootTest
+public class JobResponseCacheOrderTest {
+
+    @Autowired
+    private JobService jobService;
+
+    @Autowired
+    private JobReadCoalescer readCoalescer;
+
+    @Autowired
+    private JobResponseCache responseCache;
+
+    @Autowired
+    private Probe probe;
+
+    @TestConfiguration
+    static class ProbeConfiguration {
+        @Bean
+        Probe probe() {
+            return new Probe();
+        }
+    }
+
+    //runs the armed action once, after the coalescer and before the response cache
+    static class Probe {
+        volatile Runnable action;
+
+        @TransactionalEventListener(fallbackExecution = true)
+        @Order(JobReadCoalescer.FORGET_ORDER + 1)
+        public void onJobChanged(JobChangedEvent event) {
+            Runnable armed = action;
+            action = null;
+            if (armed != null) {
+                armed.run();
+            }
+        }
+    }
+
+    @Test
+    void testFillDuringCommitDoesNotJoinOlderRead() throws Exception {
+        Job savedJob = jobService.saveJob(new Job("Order1", "order", 200));
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            // a read that started before the commit and is still running
+            Future<List<String>> older = pool.submit(() -> readCoalescer.execute("probe", "order", () -> {
+                started.countDown();
+                await(release);
+                return List.of("before the commit");
+            }, UnaryOperator.identity()));
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+
+            long[] fillStamp = new long[1];
+            Object[] filled = new Object[1];
+            probe.action = () -> {
+                fillStamp[0] = responseCache.stamp();
+                Future<List<String>> fill = pool.submit(() -> readCoalescer.execute("probe", "order",
+                        () -> List.of("after the commit"), UnaryOperator.identity()));
+                try {
+                    try {
+                        filled[0] = fill.get(2, TimeUnit.SECONDS);
+                    } catch (TimeoutException e) {
+                        // it joined the older read, let that one finish
+                        release.countDown();
+                        filled[0] = fill.get(10, TimeUnit.SECONDS);
+                    }
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            };
+            jobService.updateJobStatus(savedJob.getId(), 300);
+
+            assertEquals(List.of("after the commit"), filled[0]);
+            // the response cache invalidated after the fill took its stamp, so the fill wouldn't be stored
+            assertNotEquals(fillStamp[0], responseCache.stamp());
+            release.countDown();
+            assertEquals(List.of("before the commit"), older.get(10, TimeUnit.SECONDS));
+        } finally {
+            probe.action = null;
+            release.countDown();
+            pool.shutdownNow();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
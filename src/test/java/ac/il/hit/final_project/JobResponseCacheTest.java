@@ -0,0 +1,86 @@
+package ac.il.hit.final_project;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for JobResponseCache: precise invalidation, stale fills and the byte bound.
+ */
+public class JobResponseCacheTest {
+
+    private static final String JSON = "application/json";
+
+    private final JobResponseCache cache = new JobResponseCache(4096, 1024);
+
+    private static JobSnapshot snapshot(Integer status, String jobType) {
+        return new JobSnapshot(1L, "Job1", status, jobType, LocalDateTime.now());
+    }
+
+    private void fill(String key) {
+        cache.put(key, JSON, ("[" + key + "]").getBytes(), cache.stamp());
+    }
+
+    @Test
+    void testUpdateOnlyInvalidatesAffectedKeys() {
+        fill(JobResponseCache.ALL_KEY);
+        fill(JobResponseCache.statusKey(200));
+        fill(JobResponseCache.statusKey(300));
+        fill(JobResponseCache.statusKey(404));
+        fill(JobResponseCache.jobTypeKey("Type1"));
+        fill(JobResponseCache.jobTypeKey("Type2"));
+
+        // job moves from status 200 to 300, job type stays Type1
+        cache.onJobChanged(new JobChangedEvent(JobChangedEvent.Kind.UPDATED, 1L,
+                snapshot(200, "Type1"), snapshot(300, "Type1")));
+
+        assertNull(cache.get(JobResponseCache.ALL_KEY));
+        assertNull(cache.get(JobResponseCache.statusKey(200)));
+        assertNull(cache.get(JobResponseCache.statusKey(300)));
+        assertNull(cache.get(JobResponseCache.jobTypeKey("Type1")));
+        // untouched lists are still cached
+        assertNotNull(cache.get(JobResponseCache.statusKey(404)));
+        assertNotNull(cache.get(JobResponseCache.jobTypeKey("Type2")));
+    }
+
+    @Test
+    void testPasswordChangeInvalidatesNothing() {
+        fill(JobResponseCache.ALL_KEY);
+        JobSnapshot snapshot = snapshot(200, "Type1");
+
+        cache.onJobChanged(new JobChangedEvent(JobChangedEvent.Kind.UPDATED, 1L, snapshot, snapshot));
+
+        assertNotNull(cache.get(JobResponseCache.ALL_KEY));
+    }
+
+    @Test
+    void testFillStartedBeforeInvalidationIsNotStored() {
+        long fillStamp = cache.stamp();
+
+        // a write commits while the fill is still querying
+        cache.onJobChanged(JobChangedEvent.deleted(snapshot(200, "Type1")));
+        cache.put(JobResponseCache.ALL_KEY, JSON, "[]".getBytes(), fillStamp);
+
+        assertNull(cache.get(JobResponseCache.ALL_KEY));
+    }
+
+    @Test
+    void testBoundedByBytes() {
+        byte[] body = new byte[1500];
+        cache.put("a", JSON, body, cache.stamp());
+        cache.put("b", JSON, body, cache.stamp());
+        cache.put("c", JSON, body, cache.stamp());
+
+        // bodies over the gzip threshold are stored compressed as well
+        assertNotNull(cache.get("c").getGzipBody());
+        assertTrue(cache.sizeBytes() <= 4096);
+        // the least recently used entry was evicted
+        assertNull(cache.get("a"));
+
+        // an entry bigger than the whole cache is never stored
+        cache.put("huge", JSON, new byte[10_000], cache.stamp());
+        assertNull(cache.get("huge"));
+    }
+}
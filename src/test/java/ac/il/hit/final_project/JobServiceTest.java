@@ -1,4 +1,7 @@
 package ac.il.hit.final_project;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
 import org.slf4j.Logger;
@@ -32,6 +35,9 @@ public class JobServiceTest {
     @Autowired
     private JobRepository jobRepository;
 
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
     private static final Logger logger = LoggerFactory.getLogger(JobServiceTest.class);
 
     private final BCryptPasswordEncoder passwordEncoder = new BCryptPasswordEncoder();
@@ -134,6 +140,22 @@ public class JobServiceTest {
             assertTrue(foundJob.isPresent());
             assertEquals(id, foundJob.get().getId());
         }
+
+        @Test
+        void testReadsReturnOwnDetachedCopies() {
+            Job savedJob = jobService.saveJob(new Job("Job1", "Type1", 200));
+
+            Job first = jobService.findJobById(savedJob.getId()).get();
+            Job second = jobService.findJobById(savedJob.getId()).get();
+
+            // every caller gets its own copy, changing it changes nothing for the others
+            assertNotSame(first, second);
+            first.setJobName("changed");
+            assertEquals("Job1", second.getJobName());
+            assertEquals("Job1", jobService.findJobByStatus(200).get(0).getJobName());
+            assertNull(second.getJobTypeRef());
+            assertEquals("Type1", second.getJobType());
+        }
     }
 
     @Nested
@@ -175,6 +197,86 @@ public class JobServiceTest {
         }
     }
 
+    @Nested
+    class cacheTests {
+
+        private Statistics statistics() {
+            return entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        }
+
+        @Test
+        void testFindByIdIsServedFromSecondLevelCache() {
+            Job savedJob = jobService.saveJob(new Job("Job1", "Type1", 200));
+            jobService.findJobById(savedJob.getId());
+
+            long hitsBefore = statistics().getDomainDataRegionStatistics(Job.CACHE_REGION).getHitCount();
+            long statementsBefore = statistics().getPrepareStatementCount();
+
+            // a new transaction, the job must come from the "job" region without a query
+            Optional<Job> foundJob = jobService.findJobById(savedJob.getId());
+
+            assertTrue(foundJob.isPresent());
+            assertTrue(statistics().getDomainDataRegionStatistics(Job.CACHE_REGION).getHitCount() > hitsBefore);
+            assertEquals(statementsBefore, statistics().getPrepareStatementCount());
+        }
+
+        @Test
+        void testPatchEvictsOnlyThePatchedJob() {
+            Job savedJob = jobService.saveJob(new Job("Job1", "Type1", 200));
+            Job otherJob = jobService.saveJob(new Job("Job2", "Type1", 200));
+            jobService.findJobById(savedJob.getId());
+            jobService.findJobById(otherJob.getId());
+            assertThat(jobService.findJobByStatus(200)).hasSize(2);
+
+            jobService.patchJob(savedJob.getId(), new JobPatchRequest("Job1 renamed", null, 300));
+
+            assertFalse(entityManagerFactory.getCache().contains(Job.class, savedJob.getId()));
+            assertTrue(entityManagerFactory.getCache().contains(Job.class, otherJob.getId()));
+            assertEquals("Job1 renamed", jobRepository.findById(savedJob.getId()).get().getJobName());
+            // the cached finder results don't hide the new status
+            assertThat(jobService.findJobByStatus(200)).extracting(Job::getId).containsExactly(otherJob.getId());
+            assertThat(jobService.findJobByStatus(300)).extracting(Job::getId).containsExactly(savedJob.getId());
+        }
+
+        @Test
+        void testBatchLookupQueriesOnlyUncachedJobs() {
+            Job cached1 = jobService.saveJob(new Job("Job1", "Type1", 200));
+            Job cached2 = jobService.saveJob(new Job("Job2", "Type1", 200));
+            Job uncached = jobService.saveJob(new Job("Job3", "Type1", 200));
+            jobService.findJobById(cached1.getId());
+            jobService.findJobById(cached2.getId());
+            entityManagerFactory.getCache().evict(Job.class, uncached.getId());
+
+            long statementsBefore = statistics().getPrepareStatementCount();
+            JobBatchDTO batch = jobService.findJobsByIds(List.of(uncached.getId(), cached2.getId(), cached1.getId()));
+
+            assertThat(batch.getJobs()).extracting(JobDTO::getJobId).containsExactly(uncached.getId(), cached2.getId(), cached1.getId());
+            // one IN (...) query for the job that wasn't cached, none for the others
+            assertEquals(statementsBefore + 1, statistics().getPrepareStatementCount());
+
+            // now all three are cached
+            statementsBefore = statistics().getPrepareStatementCount();
+            jobService.findJobsByIds(List.of(cached1.getId(), uncached.getId()));
+            assertEquals(statementsBefore, statistics().getPrepareStatementCount());
+        }
+
+        @Test
+        void testFinderQueryIsCachedAndInvalidatedOnUpdate() {
+            Job savedJob = jobService.saveJob(new Job("Job1", "Type1", 200));
+            jobService.findJobByStatus(200);
+
+            long statementsBefore = statistics().getPrepareStatementCount();
+            assertThat(jobService.findJobByStatus(200)).hasSize(1);
+            // the second call is answered by the query cache
+            assertEquals(statementsBefore, statistics().getPrepareStatementCount());
+
+            // a write to app_job makes the cached result stale
+            jobService.updateJobStatus(savedJob.getId(), 300);
+            assertThat(jobService.findJobByStatus(200)).isEmpty();
+            assertThat(jobService.findJobByStatus(300)).hasSize(1);
+        }
+    }
+
     @Nested
     class deleteTests {
 
@@ -0,0 +1,176 @@
+package ac.il.hit.final_project;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Measures what the jobType dictionary saves, against storing the name in every row.
+ * Runs only with: mvn test -Pbenchmark (-Dbenchmark.rows=... to change the number of rows, default 200k)
+ * row size / index size - the same rows in two file databases, one with a VARCHAR job_type column,
+ *                         one with a SMALLINT job_type_id, compacted file size before and after indexing the column
+ * heap                  - jobs loaded through hibernate share one String per type, rows read from a VARCHAR column
+ *                         bring one String each
+ */
+@Tag("benchmark")
+@SpringBootTest
+public class JobTypeDictionaryBenchmarkTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(JobTypeDictionaryBenchmarkTest.class);
+
+    private static final int ROWS = Integer.getInteger("benchmark.rows", 200_000);
+    private static final long FIRST_ID = 300_000_000L;
+    private static final int BATCH = 10_000;
+    private static final String[] TYPES = {"regular", "error", "creation", "deploy", "integration-test",
+            "unit-test", "nightly-build", "release", "rollback", "security-scan"};
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private JobTypeDictionary jobTypeDictionary;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @TempDir
+    Path tempDir;
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.update("DELETE FROM app_job WHERE id >= ?", FIRST_ID);
+    }
+
+    @Test
+    void measureStorage() throws Exception {
+        long[] names = storage("varchar", "job_type VARCHAR(255)", (statement, i) -> statement.setString(2, TYPES[i % TYPES.length]));
+        long[] ids = storage("smallint", "job_type_id SMALLINT", (statement, i) -> statement.setShort(2, (short) (i % TYPES.length + 1)));
+
+        logger.info("{} rows, rows: varchar {} bytes ({} per row), smallint {} bytes ({} per row)",
+                ROWS, names[0], names[0] / ROWS, ids[0], ids[0] / ROWS);
+        logger.info("{} rows, index on the column: varchar {} bytes ({} per row), smallint {} bytes ({} per row)",
+                ROWS, names[1], names[1] / ROWS, ids[1], ids[1] / ROWS);
+        assertTrue(ids[0] <= names[0]);
+        assertTrue(ids[1] <= names[1]);
+    }
+
+    @Test
+    void measureHeap() {
+        List<Object[]> rows = new ArrayList<>(BATCH);
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        for (int i = 0; i < ROWS; i++) {
+            short typeId = jobTypeDictionary.idOf(jobTypeDictionary.register(TYPES[i % TYPES.length]));
+            rows.add(new Object[]{FIRST_ID + i, "job " + i, 200, typeId, now, now});
+            if (rows.size() == BATCH || i == ROWS - 1) {
+                jdbcTemplate.batchUpdate("INSERT INTO app_job (id, job_name, status, job_type_id, created_at, updated_at)"
+                        + " VALUES (?, ?, ?, ?, ?, ?)", rows);
+                rows.clear();
+            }
+        }
+
+        // through hibernate, the converter hands out the canonical names of the dictionary
+        EntityManager entityManager = entityManagerFactory.createEntityManager();
+        Set<String> shared = Collections.newSetFromMap(new IdentityHashMap<>());
+        try {
+            List<Job> jobs = entityManager.createQuery("SELECT j FROM Job j WHERE j.id >= :first", Job.class)
+                    .setParameter("first", FIRST_ID).getResultList();
+            assertEquals(ROWS, jobs.size());
+            jobs.forEach(job -> shared.add(job.getJobType()));
+        } finally {
+            entityManager.close();
+        }
+        long sharedChars = shared.stream().mapToLong(String::length).sum();
+
+        // from a VARCHAR column a jdbc driver creates a String for every row (h2 itself caches small values,
+        // so the copies are counted per row and not by identity)
+        List<String> names = jdbcTemplate.queryForList("SELECT t.name FROM app_job j JOIN job_type t ON t.id = j.job_type_id"
+                + " WHERE j.id >= ?", String.class, FIRST_ID);
+        long copiesBytes = names.stream().mapToLong(JobTypeDictionaryBenchmarkTest::stringBytes).sum();
+        long sharedBytes = shared.stream().mapToLong(JobTypeDictionaryBenchmarkTest::stringBytes).sum();
+
+        logger.info("{} jobs: {} jobType instances ({} chars, ~{} bytes) through the dictionary,"
+                        + " {} instances (~{} bytes) from a string column, ~{} bytes saved ({} per job)",
+                ROWS, shared.size(), sharedChars, sharedBytes, names.size(), copiesBytes,
+                copiesBytes - sharedBytes, (copiesBytes - sharedBytes) / ROWS);
+        assertEquals(TYPES.length, shared.size());
+    }
+
+    //compacted size in bytes of a file database with ROWS rows: [rows without the index, the index on the column]
+    private long[] storage(String name, String column, RowBinder binder) throws SQLException {
+        String url = "jdbc:h2:file:" + tempDir.resolve(name).toAbsolutePath();
+        try (Connection connection = DriverManager.getConnection(url, "sa", "")) {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("CREATE TABLE job (id BIGINT PRIMARY KEY, " + column + ")");
+            }
+            connection.setAutoCommit(false);
+            try (PreparedStatement statement = connection.prepareStatement("INSERT INTO job VALUES (?, ?)")) {
+                for (int i = 0; i < ROWS; i++) {
+                    statement.setLong(1, i);
+                    binder.bind(statement, i);
+                    statement.addBatch();
+                    if ((i + 1) % BATCH == 0) {
+                        statement.executeBatch();
+                    }
+                }
+                statement.executeBatch();
+            }
+            connection.commit();
+            shutdownCompact(connection);
+        }
+        long rows = fileSize(name);
+        try (Connection connection = DriverManager.getConnection(url, "sa", "")) {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("CREATE INDEX idx_job_type ON job (" + column.substring(0, column.indexOf(' ')) + ")");
+            }
+            shutdownCompact(connection);
+        }
+        return new long[]{rows, fileSize(name) - rows};
+    }
+
+    private static void shutdownCompact(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("SHUTDOWN COMPACT");
+        }
+    }
+
+    private long fileSize(String name) {
+        return new File(tempDir.toFile(), name + ".mv.db").length();
+    }
+
+    //approximate heap size of a latin-1 String with compressed oops: object header + hash + coder + array reference,
+    //plus the byte[] with its header, each rounded up to 8 bytes
+    private static long stringBytes(String value) {
+        long array = 16 + value.getBytes(StandardCharsets.ISO_8859_1).length;
+        return 24 + (array + 7) / 8 * 8;
+    }
+
+    @FunctionalInterface
+    private interface RowBinder {
+        void bind(PreparedStatement statement, int row) throws SQLException;
+    }
+}
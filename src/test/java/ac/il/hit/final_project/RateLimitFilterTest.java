@@ -0,0 +1,67 @@
+package ac.il.hit.final_project;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of RateLimitFilter with mock requests: who a request is counted against, and the 429 it gets.
+ */
+public class RateLimitFilterTest {
+
+    private static final String KNOWN_KEY = "runner-key-1";
+
+    private final RateLimitFilter filter = new RateLimitFilter(properties());
+
+    private static RateLimitProperties properties() {
+        RateLimitProperties properties = new RateLimitProperties();
+        properties.setApiKeys(Set.of(KNOWN_KEY));
+        // 1 per second, bursts of 2
+        properties.setRead(new RateLimitProperties.Rate(1, 2));
+        return properties;
+    }
+
+    @Test
+    void testUnknownApiKeysShareTheBucketOfTheirAddress() throws Exception {
+        // a new key with every request doesn't get a new bucket
+        assertEquals(HttpStatus.OK.value(), get("10.0.0.1", UUID.randomUUID().toString()).getStatus());
+        assertEquals(HttpStatus.OK.value(), get("10.0.0.1", UUID.randomUUID().toString()).getStatus());
+
+        MockHttpServletResponse rejected = get("10.0.0.1", UUID.randomUUID().toString());
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS.value(), rejected.getStatus());
+        assertEquals("1", rejected.getHeader(HttpHeaders.RETRY_AFTER));
+        assertEquals("{\"status\":429,\"error\":\"Too Many Requests\"}", rejected.getContentAsString());
+
+        // another address is another client
+        assertEquals(HttpStatus.OK.value(), get("10.0.0.2", null).getStatus());
+    }
+
+    @Test
+    void testKnownApiKeyHasItsOwnBucket() throws Exception {
+        get("10.0.0.1", null);
+        get("10.0.0.1", null);
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS.value(), get("10.0.0.1", null).getStatus());
+
+        // same address, but a configured key
+        assertEquals(HttpStatus.OK.value(), get("10.0.0.1", KNOWN_KEY).getStatus());
+    }
+
+    private MockHttpServletResponse get(String remoteAddress, String apiKey) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/jobs");
+        request.setRemoteAddr(remoteAddress);
+        if (apiKey != null) {
+            request.addHeader("X-API-Key", apiKey);
+        }
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, new MockFilterChain());
+        return response;
+    }
+}
@@ -0,0 +1,123 @@
+package ac.il.hit.final_project;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for SingleFlight.
+ * The first loader is blocked on a latch so the other callers are guaranteed to arrive while it runs.
+ */
+public class SingleFlightTest {
+
+    private final ExecutorService pool = Executors.newFixedThreadPool(4);
+
+    @AfterEach
+    void tearDown() {
+        pool.shutdownNow();
+    }
+
+    @Test
+    void testConcurrentCallsShareOneLoad() throws Exception {
+        SingleFlight<String> singleFlight = new SingleFlight<>();
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        Future<String> leader = pool.submit(() -> singleFlight.execute("job-1", () -> {
+            loads.incrementAndGet();
+            loading.countDown();
+            await(release);
+            return "result";
+        }));
+        assertTrue(loading.await(5, TimeUnit.SECONDS));
+
+        Future<String> follower = pool.submit(() -> singleFlight.execute("job-1", () -> {
+            loads.incrementAndGet();
+            return "other";
+        }));
+        // wait until the follower is parked on the leader's call
+        while (singleFlight.getCoalesced() == 0) {
+            Thread.onSpinWait();
+        }
+        release.countDown();
+
+        assertEquals("result", leader.get(5, TimeUnit.SECONDS));
+        assertEquals("result", follower.get(5, TimeUnit.SECONDS));
+        assertEquals(1, loads.get());
+        assertEquals(1, singleFlight.getExecuted());
+    }
+
+    @Test
+    void testErrorIsPropagatedToAllCallers() throws Exception {
+        SingleFlight<String> singleFlight = new SingleFlight<>();
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        Future<String> leader = pool.submit(() -> singleFlight.execute("job-1", () -> {
+            loading.countDown();
+            await(release);
+            throw new IllegalStateException("db down");
+        }));
+        assertTrue(loading.await(5, TimeUnit.SECONDS));
+        Future<String> follower = pool.submit(() -> singleFlight.execute("job-1", () -> "other"));
+        while (singleFlight.getCoalesced() == 0) {
+            Thread.onSpinWait();
+        }
+        release.countDown();
+
+        Exception leaderError = assertThrows(Exception.class, () -> leader.get(5, TimeUnit.SECONDS));
+        Exception followerError = assertThrows(Exception.class, () -> follower.get(5, TimeUnit.SECONDS));
+        // the follower gets the original exception, not a CompletionException
+        assertInstanceOf(IllegalStateException.class, leaderError.getCause());
+        assertInstanceOf(IllegalStateException.class, followerError.getCause());
+    }
+
+    @Test
+    void testKeyIsForgottenAfterTheCall() {
+        SingleFlight<String> singleFlight = new SingleFlight<>();
+
+        assertEquals("first", singleFlight.execute("job-1", () -> "first"));
+        // nothing is cached, the next call loads again
+        assertEquals("second", singleFlight.execute("job-1", () -> "second"));
+        assertEquals(2, singleFlight.getExecuted());
+        assertEquals(0, singleFlight.getCoalesced());
+    }
+
+    @Test
+    void testForgetAllStartsANewCall() throws Exception {
+        SingleFlight<String> singleFlight = new SingleFlight<>();
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        Future<String> beforeWrite = pool.submit(() -> singleFlight.execute("job-1", () -> {
+            loading.countDown();
+            await(release);
+            return "old";
+        }));
+        assertTrue(loading.await(5, TimeUnit.SECONDS));
+
+        // a write committed, callers from now on must not join the old read
+        singleFlight.forgetAll();
+        assertEquals("new", singleFlight.execute("job-1", () -> "new"));
+
+        release.countDown();
+        assertEquals("old", beforeWrite.get(5, TimeUnit.SECONDS));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
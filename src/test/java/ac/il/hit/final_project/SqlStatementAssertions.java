@@ -0,0 +1,39 @@
+package ac.il.hit.final_project;
+
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Test helper that fails when a call runs more sql statements than it should,
+ * e.g. assertMaxStatements(recorder, 1, () -> jobController.getJobById(id)).
+ * Everything the call runs on the test thread counts, including the listeners that run after the commit.
+ */
+final class SqlStatementAssertions {
+
+    private SqlStatementAssertions() {
+    }
+
+    static <T> T assertMaxStatements(SqlStatementRecorder recorder, int max, Supplier<T> call) {
+        SqlStatementRecorder.Scope scope = recorder.open("test");
+        T result;
+        try {
+            result = call.get();
+        } finally {
+            scope.close();
+        }
+        if (scope.count() > max) {
+            fail("Expected at most " + max + " sql statements but " + scope.count() + " ran:\n"
+                    + scope.getStatements().stream().map(SqlStatementRecorder.Statement::sql).collect(Collectors.joining("\n")));
+        }
+        return result;
+    }
+
+    static void assertMaxStatements(SqlStatementRecorder recorder, int max, Runnable call) {
+        assertMaxStatements(recorder, max, () -> {
+            call.run();
+            return null;
+        });
+    }
+}
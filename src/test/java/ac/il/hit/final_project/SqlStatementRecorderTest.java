@@ -0,0 +1,66 @@
+package ac.il.hit.final_project;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for SqlStatementRecorder, the statements are recorded by hand instead of by the jdbc proxy.
+ */
+public class SqlStatementRecorderTest {
+
+    private final SqlStatementRecorder recorder = new SqlStatementRecorder(3);
+
+    @Test
+    void testStatementsOutsideAScopeAreNotRecorded() {
+        recorder.record("select 1", 5);
+        assertNull(recorder.currentScopeName());
+
+        try (SqlStatementRecorder.Scope scope = recorder.open("GET /jobs")) {
+            assertEquals("GET /jobs", recorder.currentScopeName());
+            recorder.record("select * from app_job", 5);
+            recorder.record("select * from job_type", 7);
+
+            assertEquals(2, scope.count());
+            assertEquals(12, scope.elapsedMillis());
+        }
+        assertNull(recorder.currentScopeName());
+    }
+
+    @Test
+    void testNestedScopesCountInBoth() {
+        try (SqlStatementRecorder.Scope outer = recorder.open("test")) {
+            recorder.record("select 1", 1);
+            try (SqlStatementRecorder.Scope inner = recorder.open("GET /jobs/{id}")) {
+                recorder.record("select 2", 1);
+                assertEquals(1, inner.count());
+            }
+            assertEquals("test", recorder.currentScopeName());
+            assertEquals(2, outer.count());
+        }
+    }
+
+    @Test
+    void testRepeatedStatementsAreFound() {
+        try (SqlStatementRecorder.Scope scope = recorder.open("GET /jobs")) {
+            recorder.record("select * from app_job", 1);
+            for (int i = 0; i < 4; i++) {
+                recorder.record("select * from job_type where id=?", 1);
+            }
+
+            assertEquals(Map.of("select * from job_type where id=?", 4), scope.repeatedStatements(3));
+        }
+    }
+
+    @Test
+    void testClosedScopeStopsRecording() {
+        SqlStatementRecorder.Scope scope = recorder.open("test");
+        scope.close();
+        scope.close();
+        recorder.record("select 1", 1);
+
+        assertEquals(0, scope.count());
+    }
+}
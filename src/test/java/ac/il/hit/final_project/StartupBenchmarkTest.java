@@ -0,0 +1,134 @@
+package ac.il.hit.final_project;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Cold start benchmark: time from launching a new JVM until GET /jobs is first answered with 200,
+ * and until the readiness probe (/actuator/health/readiness) is UP, which is when a load balancer starts routing to it.
+ * Runs only with: mvn test -Pbenchmark
+ * Every variant starts its own JVM on the test classpath, so nothing is warmed up by an earlier run.
+ * The aot variant only runs when the classes generated by spring aot are on the classpath
+ * (mvn test -Pbenchmark,fast-startup). The AppCDS archive is tied to the classpath of the extracted jar,
+ * measure it on target/fast-startup by hand (see the fast-startup profile in pom.xml).
+ */
+@Tag("benchmark")
+public class StartupBenchmarkTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(StartupBenchmarkTest.class);
+
+    private static final int RUNS = 3;
+    private static final Duration TIMEOUT = Duration.ofSeconds(120);
+    private static final String AOT_INITIALIZER = FinalProjectChenLinoyApplication.class.getName() + "__ApplicationContextInitializer";
+
+    private final HttpClient httpClient = HttpClient.newBuilder().connectTimeout(Duration.ofMillis(200)).build();
+
+    @Test
+    void benchmarkTimeToFirstRequest() throws Exception {
+        measure("sync seeding", List.of("--jobs.seed.mode=sync"));
+        measure("async seeding", List.of("--jobs.seed.mode=async"));
+
+        if (isOnClasspath(AOT_INITIALIZER)) {
+            measure("aot + async seeding", List.of("-Dspring.aot.enabled=true", "--jobs.seed.mode=async"));
+        } else {
+            logger.info("no aot classes on the classpath, skipping the aot variant");
+        }
+    }
+
+    //logs the best of RUNS cold starts
+    private void measure(String name, List<String> options) throws Exception {
+        long bestFirstRequest = Long.MAX_VALUE;
+        long bestReady = Long.MAX_VALUE;
+        for (int run = 0; run < RUNS; run++) {
+            long[] millis = timeToFirstRequest(options);
+            logger.info("{}: run {}, first request after {} ms, ready after {} ms", name, run + 1, millis[0], millis[1]);
+            bestFirstRequest = Math.min(bestFirstRequest, millis[0]);
+            bestReady = Math.min(bestReady, millis[1]);
+        }
+        logger.info("{}: first request after {} ms, ready after {} ms (best of {})", name, bestFirstRequest, bestReady, RUNS);
+    }
+
+    //ms until GET /jobs answered 200, and until the readiness probe answered 200
+    private long[] timeToFirstRequest(List<String> options) throws Exception {
+        int port = freePort();
+        List<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        options.stream().filter(option -> option.startsWith("-D")).forEach(command::add);
+        command.add(FinalProjectChenLinoyApplication.class.getName());
+        command.add("--server.port=" + port);
+        command.add("--spring.datasource.url=jdbc:h2:mem:startup-benchmark");
+        options.stream().filter(option -> option.startsWith("--")).forEach(command::add);
+
+        HttpRequest jobs = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/jobs"))
+                .timeout(Duration.ofSeconds(5)).build();
+        HttpRequest readiness = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/actuator/health/readiness"))
+                .timeout(Duration.ofSeconds(5)).build();
+        long firstRequest = -1;
+        long ready = -1;
+        long start = System.nanoTime();
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(ProcessBuilder.Redirect.DISCARD).start();
+        try {
+            while (System.nanoTime() - start < TIMEOUT.toNanos()) {
+                assertTrue(process.isAlive(), "application exited before answering");
+                if (firstRequest < 0 && isOk(jobs)) {
+                    firstRequest = (System.nanoTime() - start) / 1_000_000;
+                }
+                if (ready < 0 && isOk(readiness)) {
+                    ready = (System.nanoTime() - start) / 1_000_000;
+                }
+                if (firstRequest >= 0 && ready >= 0) {
+                    return new long[]{firstRequest, ready};
+                }
+                Thread.sleep(10);
+            }
+            return fail("application did not answer within " + TIMEOUT);
+        } finally {
+            process.destroy();
+            if (!process.waitFor(30, TimeUnit.SECONDS)) {
+                process.destroyForcibly();
+            }
+        }
+    }
+
+    private boolean isOk(HttpRequest request) throws InterruptedException {
+        try {
+            return httpClient.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() == 200;
+        } catch (IOException e) {
+            // not listening yet
+            return false;
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static boolean isOnClasspath(String className) {
+        try {
+            Class.forName(className, false, StartupBenchmarkTest.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+}